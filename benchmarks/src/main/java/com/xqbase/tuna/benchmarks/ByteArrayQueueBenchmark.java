@@ -0,0 +1,78 @@
+package com.xqbase.tuna.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/** Add/remove patterns of {@link ByteArrayQueue}, as used by filters and parsers */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteArrayQueueBenchmark {
+	private static final int BURST = 16;
+
+	@Param({"64", "1460", "16384"})
+	public int chunkSize;
+
+	private byte[] chunk, buffer;
+	private ByteArrayQueue queue = new ByteArrayQueue();
+
+	@Setup
+	public void setup() {
+		chunk = Corpus.random(chunkSize);
+		buffer = new byte[chunkSize];
+	}
+
+	/** Adds a chunk and removes it, like a queue drained by every write */
+	@Benchmark
+	public ByteArrayQueue addRemove() {
+		return queue.add(chunk).remove(buffer);
+	}
+
+	/** Adds a burst of chunks and then drains them one by one */
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public ByteArrayQueue burst() {
+		for (int i = 0; i < BURST; i ++) {
+			queue.add(chunk);
+		}
+		for (int i = 0; i < BURST; i ++) {
+			queue.remove(buffer);
+		}
+		return queue;
+	}
+
+	/** Adds a chunk and removes half of it, like a parser waiting for a packet tail */
+	@Benchmark
+	public ByteArrayQueue addRemoveHalf() {
+		queue.add(chunk).remove(chunkSize / 2);
+		if (queue.length() >= chunkSize * BURST) {
+			queue.remove(queue.length());
+		}
+		return queue;
+	}
+
+	/** Adds a chunk into a new queue, like a filter buffering one packet */
+	@Benchmark
+	public ByteArrayQueue newQueue() {
+		ByteArrayQueue baq = new ByteArrayQueue();
+		baq.add(chunk);
+		return baq.clear();
+	}
+}
\ No newline at end of file
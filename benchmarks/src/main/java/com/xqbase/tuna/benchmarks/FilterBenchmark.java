@@ -0,0 +1,86 @@
+package com.xqbase.tuna.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xqbase.tuna.Connection;
+import com.xqbase.tuna.ConnectionFilter;
+import com.xqbase.tuna.misc.ZLibFilter;
+import com.xqbase.tuna.proxy.CipherFilter;
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/**
+ * Per-packet cost of {@link ZLibFilter} and {@link CipherFilter},
+ * sending from the application end and receiving from the network end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	@Param({"zlib", "cipher"})
+	public String filter;
+	@Param({"256", "4096", "16384"})
+	public int payloadSize;
+
+	private byte[] payload, packet;
+	private ConnectionFilter sender, receiver;
+
+	private ConnectionFilter newFilter() {
+		switch (filter) {
+		case "zlib":
+			return new ZLibFilter();
+		case "cipher":
+			return new CipherFilter("benchmark", new byte[Connection.MAX_BUFFER_SIZE]);
+		default:
+			throw new IllegalArgumentException(filter);
+		}
+	}
+
+	@Setup
+	public void setup(Blackhole bh) {
+		payload = Corpus.textBytes(payloadSize);
+		ByteArrayQueue baq = new ByteArrayQueue();
+		ConnectionFilter encoder = newFilter();
+		encoder.setHandler(new SinkHandler(baq));
+		encoder.send(payload);
+		packet = baq.getBytes();
+
+		sender = newFilter();
+		sender.setHandler(new SinkHandler(bh));
+		receiver = newFilter();
+		new Connection() {
+			@Override
+			public void onRecv(byte[] b, int off, int len) {
+				bh.consume(b);
+				bh.consume(len);
+			}
+		}.appendFilter(receiver).setHandler(new SinkHandler(bh));
+	}
+
+	/** Encodes a packet from the application end */
+	@Benchmark
+	public void send() {
+		sender.send(payload);
+	}
+
+	/** Decodes a packet from the network end, which a stream cipher decodes into garbage */
+	@Benchmark
+	public void recv() {
+		receiver.onRecv(packet, 0, packet.length);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+package com.xqbase.tuna.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xqbase.tuna.http.HttpPacket;
+import com.xqbase.tuna.http.HttpPacketException;
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/** {@link HttpPacket#read(ByteArrayQueue)} and write on requests and responses */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpPacketBenchmark {
+	@Param({"get", "post", "response", "chunked"})
+	public String corpus;
+
+	private byte[] data;
+	private int type;
+	private HttpPacket packet = new HttpPacket();
+	private ByteArrayQueue out = new ByteArrayQueue();
+
+	@Setup
+	public void setup() throws HttpPacketException {
+		String s;
+		switch (corpus) {
+		case "get":
+			s = Corpus.GET_REQUEST;
+			type = HttpPacket.TYPE_REQUEST;
+			break;
+		case "post":
+			s = Corpus.POST_REQUEST;
+			type = HttpPacket.TYPE_REQUEST;
+			break;
+		case "response":
+			s = Corpus.RESPONSE;
+			type = HttpPacket.TYPE_RESPONSE;
+			break;
+		case "chunked":
+			s = Corpus.CHUNKED_RESPONSE;
+			type = HttpPacket.TYPE_RESPONSE;
+			break;
+		default:
+			throw new IllegalArgumentException(corpus);
+		}
+		data = s.getBytes(StandardCharsets.ISO_8859_1);
+		if (!readPacket().isComplete()) {
+			throw new IllegalStateException("Incomplete Corpus: " + corpus);
+		}
+	}
+
+	private HttpPacket readPacket() throws HttpPacketException {
+		packet.reset();
+		packet.setType(type);
+		packet.read(new ByteArrayQueue(data, 0, data.length));
+		return packet;
+	}
+
+	@Benchmark
+	public HttpPacket read() throws HttpPacketException {
+		return readPacket();
+	}
+
+	/** Reads a packet and writes it back, like a proxy forwarding it */
+	@Benchmark
+	public ByteArrayQueue readWrite() throws HttpPacketException {
+		readPacket().write(out.clear(), true, false);
+		return out;
+	}
+}
\ No newline at end of file
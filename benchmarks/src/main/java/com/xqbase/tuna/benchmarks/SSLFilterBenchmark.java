@@ -0,0 +1,187 @@
+package com.xqbase.tuna.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xqbase.tuna.Connection;
+import com.xqbase.tuna.ConnectionHandler;
+import com.xqbase.tuna.ConnectionSession;
+import com.xqbase.tuna.ssl.SSLFilter;
+import com.xqbase.tuna.ssl.SSLManagers;
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/**
+ * {@link SSLFilter} wrap and unwrap throughput over a pair of filters connected
+ * in memory. Each operation is one payload sent.<p>
+ *
+ * TLSv1.2 is used because {@link SSLFilter} still treats post-handshake messages
+ * of TLSv1.3 (e.g. session tickets) as closing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SSLFilterBenchmark {
+	/** The network end of a filter, which queues data until the handshake finishes */
+	private static class Wire implements ConnectionHandler {
+		ByteArrayQueue queue = new ByteArrayQueue();
+		Connection peer = null;
+		Blackhole bh = null;
+
+		@Override
+		public void send(byte[] b, int off, int len) {
+			if (peer != null) {
+				peer.onRecv(b, off, len);
+			} else if (bh != null) {
+				bh.consume(b);
+				bh.consume(len);
+			} else {
+				queue.add(b, off, len);
+			}
+		}
+
+		@Override
+		public void setBufferSize(int bufferSize) {/**/}
+
+		@Override
+		public void disconnect() {
+			throw new IllegalStateException("Disconnected");
+		}
+	}
+
+	/** The application end of a filter */
+	private static class Endpoint implements Connection {
+		Blackhole bh;
+		boolean connected = false;
+
+		Endpoint(Blackhole bh) {
+			this.bh = bh;
+		}
+
+		@Override
+		public void onRecv(byte[] b, int off, int len) {
+			bh.consume(b);
+			bh.consume(len);
+		}
+
+		@Override
+		public void onConnect(ConnectionSession session) {
+			connected = true;
+		}
+
+		@Override
+		public void onDisconnect() {
+			throw new IllegalStateException("Disconnected");
+		}
+	}
+
+	private static final ConnectionSession SESSION = new ConnectionSession(new
+			InetSocketAddress("127.0.0.1", 443), new InetSocketAddress("127.0.0.1", 50000));
+
+	@Param({"1024", "16384"})
+	public int payloadSize;
+
+	private byte[] payload;
+	/** Handshake tasks run in place and then queue events */
+	private ArrayDeque<Runnable> events = new ArrayDeque<>();
+	private SSLFilter client, oneWayClient;
+
+	private SSLContext getContext() throws IOException, GeneralSecurityException {
+		KeyStore ks = KeyStore.getInstance("PKCS12");
+		try (InputStream in = SSLFilterBenchmark.class.
+				getResourceAsStream("/localhost.pfx")) {
+			ks.load(in, "changeit".toCharArray());
+		}
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+		kmf.init(ks, "changeit".toCharArray());
+		SSLContext sslc = SSLContext.getInstance("TLSv1.2");
+		sslc.init(kmf.getKeyManagers(), SSLManagers.DEFAULT_TRUST_MANAGERS, null);
+		return sslc;
+	}
+
+	private SSLFilter newFilter(SSLContext sslc, int mode, Wire wire, Endpoint endpoint) {
+		SSLFilter filter = new SSLFilter(events::add, Runnable::run, null, sslc, mode);
+		endpoint.appendFilter(filter).setHandler(wire);
+		filter.onConnect(SESSION);
+		return filter;
+	}
+
+	/** @return the client filter, whose sent data goes to the server or into the Blackhole */
+	private SSLFilter handshake(SSLContext sslc, Blackhole bh, boolean oneWay) {
+		Wire clientWire = new Wire(), serverWire = new Wire();
+		Endpoint clientEnd = new Endpoint(bh), serverEnd = new Endpoint(bh);
+		SSLFilter client_ = newFilter(sslc, SSLFilter.CLIENT, clientWire, clientEnd);
+		SSLFilter server = newFilter(sslc, SSLFilter.SERVER_NO_AUTH, serverWire, serverEnd);
+		for (int i = 0; i < 100 && !(clientEnd.connected && serverEnd.connected &&
+				clientWire.queue.length() == 0 && serverWire.queue.length() == 0); i ++) {
+			Runnable event;
+			while ((event = events.poll()) != null) {
+				event.run();
+			}
+			ByteArrayQueue queue = clientWire.queue;
+			if (queue.length() > 0) {
+				byte[] b = queue.getBytes();
+				queue.clear();
+				server.onRecv(b, 0, b.length);
+			}
+			queue = serverWire.queue;
+			if (queue.length() > 0) {
+				byte[] b = queue.getBytes();
+				queue.clear();
+				client_.onRecv(b, 0, b.length);
+			}
+		}
+		if (!clientEnd.connected || !serverEnd.connected) {
+			throw new IllegalStateException("Handshake Not Finished");
+		}
+		if (oneWay) {
+			clientWire.bh = bh;
+		} else {
+			clientWire.peer = server;
+		}
+		return client_;
+	}
+
+	@Setup
+	public void setup(Blackhole bh) throws IOException, GeneralSecurityException {
+		payload = Corpus.random(payloadSize);
+		SSLContext sslc = getContext();
+		client = handshake(sslc, bh, false);
+		oneWayClient = handshake(sslc, bh, true);
+	}
+
+	/** Wraps data and discards records */
+	@Benchmark
+	public void wrap() {
+		oneWayClient.send(payload);
+	}
+
+	/** Wraps data and unwraps records in the peer */
+	@Benchmark
+	public void wrapUnwrap() {
+		client.send(payload);
+	}
+}
\ No newline at end of file
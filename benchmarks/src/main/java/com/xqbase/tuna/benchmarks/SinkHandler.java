@@ -0,0 +1,36 @@
+package com.xqbase.tuna.benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xqbase.tuna.ConnectionHandler;
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/** A network end which collects sent data into a queue, or discards it into a {@link Blackhole} */
+public class SinkHandler implements ConnectionHandler {
+	private ByteArrayQueue queue = null;
+	private Blackhole bh = null;
+
+	public SinkHandler(ByteArrayQueue queue) {
+		this.queue = queue;
+	}
+
+	public SinkHandler(Blackhole bh) {
+		this.bh = bh;
+	}
+
+	@Override
+	public void send(byte[] b, int off, int len) {
+		if (queue == null) {
+			bh.consume(b);
+			bh.consume(len);
+		} else {
+			queue.add(b, off, len);
+		}
+	}
+
+	@Override
+	public void setBufferSize(int bufferSize) {/**/}
+
+	@Override
+	public void disconnect() {/**/}
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.xqbase.tuna.mux;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xqbase.tuna.ConnectionHandler;
+import com.xqbase.tuna.benchmarks.Corpus;
+import com.xqbase.tuna.benchmarks.SinkHandler;
+
+/**
+ * {@link MulticastHandler#send(byte[], int, int)} fan-out to virtual connections
+ * spread over mux connections. Each operation is one broadcast.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MulticastHandlerBenchmark {
+	@Param({"16", "1024", "16384"})
+	public int connections;
+	@Param({"1", "8"})
+	public int muxes;
+	@Param({"64", "1024"})
+	public int payloadSize;
+
+	private byte[] payload;
+	private MulticastHandler multicast;
+
+	@Setup
+	public void setup(Blackhole bh) {
+		payload = Corpus.textBytes(payloadSize);
+		MuxContext context = new MuxContext(null, t -> true, 1048576, 0);
+		MuxServerConnection[] muxConns = new MuxServerConnection[muxes];
+		for (int i = 0; i < muxes; i ++) {
+			muxConns[i] = new MuxServerConnection(null, context, false);
+			muxConns[i].setHandler(new SinkHandler(bh));
+		}
+		Set<ConnectionHandler> handlers = new LinkedHashSet<>();
+		for (int i = 0; i < connections; i ++) {
+			handlers.add(new VirtualConnection(null, muxConns[i % muxes], i / muxes + 1));
+		}
+		multicast = new MulticastHandler(handlers);
+	}
+
+	@Benchmark
+	public void send() {
+		multicast.send(payload, 0, payload.length);
+	}
+}
\ No newline at end of file
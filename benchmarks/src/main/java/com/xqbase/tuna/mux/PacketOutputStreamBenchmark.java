@@ -0,0 +1,69 @@
+package com.xqbase.tuna.mux;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xqbase.tuna.benchmarks.Corpus;
+import com.xqbase.tuna.benchmarks.SinkHandler;
+import com.xqbase.tuna.packet.PacketException;
+import com.xqbase.tuna.packet.PacketOutputStream;
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/**
+ * {@link PacketOutputStream} with {@link MuxPacket#PARSER}, which receives a stream of
+ * mux packets in segments. Each operation is one packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketOutputStreamBenchmark {
+	private static final int PACKETS = 256;
+
+	@Param({"16", "1024", "8192"})
+	public int payloadSize;
+	/** 1460 for a TCP segment, or 32768 for a full read */
+	@Param({"1460", "32768"})
+	public int segmentSize;
+
+	private byte[] stream;
+	private PacketOutputStream out;
+
+	@Setup
+	public void setup(Blackhole bh) {
+		ByteArrayQueue baq = new ByteArrayQueue();
+		SinkHandler sink = new SinkHandler(baq);
+		byte[] payload = Corpus.random(payloadSize);
+		for (int i = 0; i < PACKETS; i ++) {
+			byte[] b = new byte[MuxPacket.HEAD_SIZE + payloadSize];
+			System.arraycopy(payload, 0, b, MuxPacket.HEAD_SIZE, payloadSize);
+			MuxPacket.send(sink, b, MuxPacket.CONNECTION_RECV, i);
+		}
+		stream = baq.getBytes();
+		out = new PacketOutputStream(MuxPacket.PARSER, (b, off, len) ->
+				bh.consume(len));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PACKETS)
+	public void write() throws PacketException {
+		for (int off = 0; off < stream.length; off += segmentSize) {
+			out.write(stream, off, Math.min(segmentSize, stream.length - off));
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.xqbase.tuna;
+
+import java.nio.channels.SelectionKey;
+
+abstract class Attachment {
+	SelectionKey selectionKey;
+
+	abstract void closeChannel();
+
+	void finishClose() {
+		// "selectionKey" is null if closed before connecting
+		if (selectionKey != null) {
+			selectionKey.cancel();
+		}
+		closeChannel();
+	}
+}
\ No newline at end of file
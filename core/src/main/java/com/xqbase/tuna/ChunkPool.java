@@ -0,0 +1,27 @@
+package com.xqbase.tuna;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/** A pool of direct chunks, which is owned by one {@link ConnectorImpl} and not thread-safe */
+class ChunkPool {
+	static final int CHUNK_SIZE = 16384;
+
+	private static final int MAX_POOLED = 256;
+
+	private ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+	/** Bytes in all {@link ChunkQueue}s of this pool */
+	long queuedBytes = 0;
+
+	ByteBuffer borrow() {
+		ByteBuffer chunk = chunks.poll();
+		return chunk == null ? ByteBuffer.allocateDirect(CHUNK_SIZE) : chunk;
+	}
+
+	void release(ByteBuffer chunk) {
+		if (chunks.size() < MAX_POOLED) {
+			chunk.clear();
+			chunks.push(chunk);
+		}
+	}
+}
\ No newline at end of file
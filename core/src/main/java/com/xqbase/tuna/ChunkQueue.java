@@ -0,0 +1,156 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An output queue of pooled chunks, which can be written with one gathering write,
+ * and never copies queued bytes again on partial writes.<p>
+ *
+ * The bytes to write in each chunk are between its position and limit,
+ * and bytes are appended after the limit of the last chunk.
+ */
+class ChunkQueue {
+	private static final int MIN_READ = 2048;
+
+	private ChunkPool pool;
+	/** Chunks from <code>chunks[head]</code> to <code>chunks[head + count - 1]</code> */
+	private ByteBuffer[] chunks = new ByteBuffer[4];
+	private int head = 0, count = 0, length = 0;
+
+	ChunkQueue(ChunkPool pool) {
+		this.pool = pool;
+	}
+
+	int length() {
+		return length;
+	}
+
+	/** Adds bytes from the position to the limit of <code>buffer</code> */
+	void add(ByteBuffer buffer) {
+		int limit = buffer.limit();
+		length += buffer.remaining();
+		pool.queuedBytes += buffer.remaining();
+		while (buffer.hasRemaining()) {
+			ByteBuffer tail = count == 0 ? null : chunks[head + count - 1];
+			if (tail == null || tail.limit() == tail.capacity()) {
+				tail = pool.borrow();
+				tail.limit(0);
+				append(tail);
+			}
+			int pos = tail.position();
+			int tailLimit = tail.limit();
+			int n = Math.min(buffer.remaining(), tail.capacity() - tailLimit);
+			tail.limit(tailLimit + n);
+			tail.position(tailLimit);
+			buffer.limit(buffer.position() + n);
+			tail.put(buffer);
+			buffer.limit(limit);
+			tail.position(pos);
+		}
+	}
+
+	/** @return bytes which {@link #read(ReadableByteChannel, int)} reads at most */
+	int readLimit(int max) {
+		ByteBuffer tail = count == 0 ? null : chunks[head + count - 1];
+		int room = tail == null ? 0 : tail.capacity() - tail.limit();
+		return Math.min(max, room < MIN_READ ? ChunkPool.CHUNK_SIZE : room);
+	}
+
+	/**
+	 * Reads at most <code>max</code> bytes from <code>channel</code> into the tail
+	 *
+	 * @return number of bytes read, or -1 for end of stream
+	 */
+	int read(ReadableByteChannel channel, int max) throws IOException {
+		ByteBuffer tail = count == 0 ? null : chunks[head + count - 1];
+		if (tail == null || tail.capacity() - tail.limit() < MIN_READ) {
+			tail = pool.borrow();
+			tail.limit(0);
+			append(tail);
+		}
+		int pos = tail.position();
+		int limit = tail.limit();
+		tail.limit(Math.min(tail.capacity(), limit + max));
+		tail.position(limit);
+		int bytesRead;
+		try {
+			bytesRead = channel.read(tail);
+		} finally {
+			tail.limit(tail.position());
+			tail.position(pos);
+		}
+		if (bytesRead > 0) {
+			length += bytesRead;
+			pool.queuedBytes += bytesRead;
+		}
+		return bytesRead;
+	}
+
+	private void append(ByteBuffer chunk) {
+		if (head + count == chunks.length) {
+			if (head > 0) {
+				System.arraycopy(chunks, head, chunks, 0, count);
+				for (int i = count; i < head + count; i ++) {
+					chunks[i] = null;
+				}
+				head = 0;
+			} else {
+				ByteBuffer[] newChunks = new ByteBuffer[chunks.length * 2];
+				System.arraycopy(chunks, 0, newChunks, 0, count);
+				chunks = newChunks;
+			}
+		}
+		chunks[head + count] = chunk;
+		count ++;
+	}
+
+	/**
+	 * Writes queued bytes, and then <code>extra</code> if given, in one gathering write.
+	 * Bytes left in <code>extra</code> are not queued.
+	 *
+	 * @return number of bytes written from the queue and <code>extra</code>
+	 */
+	long write(GatheringByteChannel channel, ByteBuffer extra) throws IOException {
+		long bytesWritten;
+		if (extra == null) {
+			bytesWritten = count == 1 ? channel.write(chunks[head]) :
+					channel.write(chunks, head, count);
+		} else if (count == 0) {
+			return channel.write(extra);
+		} else {
+			append(extra);
+			try {
+				bytesWritten = channel.write(chunks, head, count);
+			} finally {
+				count --;
+				chunks[head + count] = null;
+			}
+		}
+		long removed = Math.min(bytesWritten, length);
+		length -= removed;
+		pool.queuedBytes -= removed;
+		while (count > 0 && !chunks[head].hasRemaining()) {
+			pool.release(chunks[head]);
+			chunks[head] = null;
+			head ++;
+			count --;
+		}
+		if (count == 0) {
+			head = 0;
+		}
+		return bytesWritten;
+	}
+
+	/** Returns all chunks to the pool */
+	void clear() {
+		for (int i = head; i < head + count; i ++) {
+			pool.release(chunks[i]);
+			chunks[i] = null;
+		}
+		pool.queuedBytes -= length;
+		head = count = length = 0;
+	}
+}
\ No newline at end of file
@@ -1,7 +1,15 @@
 package com.xqbase.tuna;
 
+import java.nio.ByteBuffer;
+
 public interface Connection {
 	public static final int MAX_BUFFER_SIZE = 32768;
+	/** Nothing received within the read idle timeout */
+	public static final int READ_IDLE = 1;
+	/** Nothing sent within the write idle timeout */
+	public static final int WRITE_IDLE = 2;
+	/** Nothing received or sent within the all idle timeout */
+	public static final int ALL_IDLE = 3;
 
 	/**
 	 * A {@link ConnectionHandler} will be set by {@link ConnectorImpl}
@@ -18,6 +26,25 @@ public interface Connection {
 	 * @param len
 	 */
 	public default void onRecv(byte[] b, int off, int len) {/**/}
+	/**
+	 * Consumes received data in the APPLICATION end of the connection,
+	 * from the position to the limit of a (direct) buffer.<p>
+	 *
+	 * A connection overriding this method receives data from {@link ConnectorImpl}
+	 * without being copied into a byte array. The buffer is reused after this call.
+	 * By default, the data is passed to {@link #onRecv(byte[], int, int)}.
+	 */
+	public default void onRecv(ByteBuffer buffer) {
+		int len = buffer.remaining();
+		if (buffer.hasArray()) {
+			onRecv(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+			buffer.position(buffer.limit());
+		} else {
+			byte[] b = new byte[len];
+			buffer.get(b);
+			onRecv(b, 0, len);
+		}
+	}
 	/**
 	 * Consumes queue (queued or completed sending) events in the APPLICATION end of the connection.
 	 *
@@ -32,17 +59,21 @@ public interface Connection {
 	public default void onConnect(ConnectionSession session) {/**/}
 	/** Consumes passive disconnecting events in the APPLICATION end of the connection. */
 	public default void onDisconnect() {/**/}
+	/**
+	 * Consumes idle events in the APPLICATION end of the connection,
+	 * raised once per timeout while the connection stays idle.
+	 *
+	 * @param idle {@link #READ_IDLE}, {@link #WRITE_IDLE} or {@link #ALL_IDLE}
+	 * @see ConnectionHandler#setIdleTimeout(int, int, int)
+	 */
+	public default void onIdle(int idle) {/**/}
 
 	// TODO append filter after onConnect ?
 	/** Adds a {@link ConnectionFilter} as a filter into the network end of the connection. */
 	public default Connection appendFilter(ConnectionFilter filter) {
-		filter.connection = this;
-		return new ConnectionWrapper(filter) {
-			@Override
-			public void setHandler(ConnectionHandler handler) {
-				super.setHandler(handler); // identical to "filter.setHandler(handler)"
-				Connection.this.setHandler(filter);
-			}
-		};
+		// Files sent through a filter which wraps sent data are read by a FileFilter
+		Connection connection = filter.wrapsSend() ?
+				ConnectionFilter.append(this, new FileFilter()) : this;
+		return ConnectionFilter.append(connection, filter);
 	}
 }
\ No newline at end of file
@@ -1,5 +1,10 @@
 package com.xqbase.tuna;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.xqbase.tuna.util.ByteArrayPool;
+
 /**
  * Provides a wrapper for a {@link Connection} and a {@link ConnectionHandler}.<p>
  *
@@ -9,8 +14,32 @@ package com.xqbase.tuna;
  * from the network side to the application side.
  */
 public class ConnectionFilter extends ConnectionWrapper implements ConnectionHandler {
+	private static final ClassValue<Boolean> WRAPS_SEND = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return Boolean.valueOf(type.getMethod("send", byte[].class, int.class, int.class).
+						getDeclaringClass() != ConnectionFilter.class);
+			} catch (ReflectiveOperationException e) {
+				return Boolean.TRUE;
+			}
+		}
+	};
+
 	private ConnectionHandler handler;
 
+	/** @see Connection#appendFilter(ConnectionFilter) */
+	static Connection append(Connection connection, ConnectionFilter filter) {
+		filter.connection = connection;
+		return new ConnectionWrapper(filter) {
+			@Override
+			public void setHandler(ConnectionHandler handler) {
+				super.setHandler(handler); // identical to "filter.setHandler(handler)"
+				filter.connection.setHandler(filter);
+			}
+		};
+	}
+
 	protected ConnectionFilter() {
 		super(null);
 	}
@@ -30,15 +59,78 @@ public class ConnectionFilter extends ConnectionWrapper implements ConnectionHan
 		handler.send(b, off, len);
 	}
 
+	/** Copies a direct buffer into a pooled array and then wraps sent data */
+	@Override
+	public void send(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			ConnectionHandler.super.send(buffer);
+			return;
+		}
+		if (!buffer.hasRemaining()) {
+			return;
+		}
+		byte[] b = ByteArrayPool.borrow(Math.min(buffer.remaining(),
+				Connection.MAX_BUFFER_SIZE));
+		try {
+			while (buffer.hasRemaining()) {
+				int len = Math.min(buffer.remaining(), b.length);
+				buffer.get(b, 0, len);
+				send(b, 0, len);
+			}
+		} finally {
+			ByteArrayPool.release(b);
+		}
+	}
+
+	/** @return <b>true</b> if sent data is wrapped, so files must be read and wrapped */
+	boolean wrapsSend() {
+		return WRAPS_SEND.get(getClass()).booleanValue();
+	}
+
+	/**
+	 * Passes a file to the network side if sent data is not wrapped,
+	 * otherwise reads the file in chunks and wraps them.
+	 * A filter added by {@link Connection#appendFilter(ConnectionFilter)} has a
+	 * {@link FileFilter} in front of it, which reads the file as the queue drains.
+	 */
+	@Override
+	public void sendFile(FileChannel channel, long position, long count) {
+		if (wrapsSend()) {
+			ConnectionHandler.super.sendFile(channel, position, count);
+		} else {
+			handler.sendFile(channel, position, count);
+		}
+	}
+
 	/** Wraps buffer size events, from the application side to the network side */
 	@Override
 	public void setBufferSize(int bufferSize) {
 		handler.setBufferSize(bufferSize);
 	}
 
+	@Override
+	public boolean setIdleTimeout(int readIdle, int writeIdle, int allIdle) {
+		return handler.setIdleTimeout(readIdle, writeIdle, allIdle);
+	}
+
+	@Override
+	public boolean setWatermarks(int low, int high) {
+		return handler.setWatermarks(low, high);
+	}
+
+	@Override
+	public boolean invokeWhenDrained(int size, Runnable runnable) {
+		return handler.invokeWhenDrained(size, runnable);
+	}
+
 	/** Wraps active disconnecting events, from the application side to the network side */
 	@Override
 	public void disconnect() {
 		handler.disconnect();
 	}
+
+	@Override
+	public ConnectionStats getStats() {
+		return handler.getStats();
+	}
 }
\ No newline at end of file
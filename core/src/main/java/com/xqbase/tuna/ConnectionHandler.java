@@ -1,5 +1,12 @@
 package com.xqbase.tuna;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.xqbase.tuna.util.ByteArrayPool;
+
 public interface ConnectionHandler {
 	/**
 	 * Sends a sequence of bytes in the application end,
@@ -10,12 +17,114 @@ public interface ConnectionHandler {
 	}
 	/** Sends a sequence of bytes in the application end. */
 	public void send(byte[] b, int off, int len);
+	/**
+	 * Sends bytes from the position to the limit of a (direct) buffer in the application end.
+	 * The buffer can be reused after this call.
+	 * By default, the data is passed to {@link #send(byte[], int, int)}.
+	 */
+	public default void send(ByteBuffer buffer) {
+		int len = buffer.remaining();
+		if (buffer.hasArray()) {
+			send(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+			buffer.position(buffer.limit());
+		} else {
+			byte[] b = new byte[len];
+			buffer.get(b);
+			send(b, 0, len);
+		}
+	}
+	/**
+	 * Sends a part of a file in the application end, after the data sent before,
+	 * and closes the channel when done, even if failed.<p>
+	 *
+	 * Without filters, {@link ConnectorImpl} transfers the file by "sendfile"
+	 * without copying into the heap, and the untransferred bytes are counted
+	 * in {@link Connection#onQueue(int)}.
+	 * Through a {@link ConnectionFilter} which wraps sent data, the file is read
+	 * one chunk at a time as the queue drains, see {@link #invokeWhenDrained(int, Runnable)}.
+	 * By default, the file is read in chunks and passed to {@link #send(byte[], int, int)}
+	 * at once, and the connection is disconnected if reading fails.
+	 */
+	public default void sendFile(FileChannel channel, long position, long count) {
+		byte[] b = ByteArrayPool.borrow(Connection.MAX_BUFFER_SIZE);
+		try (FileChannel fc = channel) {
+			ByteBuffer bb = ByteBuffer.wrap(b);
+			long pos = position;
+			long end = position + count;
+			while (pos < end) {
+				bb.clear();
+				bb.limit((int) Math.min(end - pos, b.length));
+				int bytesRead = fc.read(bb, pos);
+				if (bytesRead < 0) {
+					throw new EOFException();
+				}
+				send(b, 0, bytesRead);
+				pos += bytesRead;
+			}
+		} catch (IOException e) {
+			disconnect();
+		} finally {
+			ByteArrayPool.release(b);
+		}
+	}
+	/**
+	 * Relays received data of this connection and the peer connection to each other
+	 * in the network end, without <code>onRecv()</code>, and pauses reading
+	 * while the other side is busy.
+	 * Data sent before are still sent first, and disconnecting events are still raised.<p>
+	 *
+	 * {@link ConnectorImpl} supports relaying between two connections in the same loop
+	 * without filters.
+	 *
+	 * @return <b>true</b> if relaying has started, or <b>false</b> if not supported
+	 */
+	public default boolean relay(ConnectionHandler peer) {
+		return false;
+	}
 	/**
 	 * Set buffer size
 	 *
 	 * @param bufferSize buffer size, <code>0</code> to block receiving
 	 */
 	public void setBufferSize(int bufferSize);
+	/**
+	 * Raises {@link Connection#onIdle(int)} when nothing is received or sent
+	 * in the network end within the given milliseconds, counted from this call.<p>
+	 *
+	 * {@link ConnectorImpl} tracks the timeouts with the time cached once per loop pass,
+	 * so there is no cost per read or write.
+	 *
+	 * @param readIdle timeout of {@link Connection#READ_IDLE}, <code>0</code> to disable
+	 * @param writeIdle timeout of {@link Connection#WRITE_IDLE}, <code>0</code> to disable
+	 * @param allIdle timeout of {@link Connection#ALL_IDLE}, <code>0</code> to disable
+	 * @return <b>true</b> if the timeouts are tracked, or <b>false</b> if not supported
+	 */
+	public default boolean setIdleTimeout(int readIdle, int writeIdle, int allIdle) {
+		return false;
+	}
+	/**
+	 * Sets watermarks of the bytes queued in the network end.
+	 * {@link Connection#onQueue(int)} is then raised only when the queue grows
+	 * to <code>high</code> or more, and when it drains to <code>low</code> or less,
+	 * instead of on every change while queued.
+	 *
+	 * @param low the size to resume, <code>0</code> to resume when the queue is empty
+	 * @param high the size to block, <code>0</code> to unset watermarks
+	 * @return <b>true</b> if the watermarks are set, or <b>false</b> if not supported
+	 */
+	public default boolean setWatermarks(int low, int high) {
+		return false;
+	}
+	/**
+	 * Runs <code>runnable</code> in the loop once the bytes queued in the network end
+	 * drain to <code>size</code> or less, or in the next loop pass if already drained.
+	 * Only the last runnable is kept, and it is dropped when the connection is closed.
+	 *
+	 * @return <b>true</b> if the runnable is kept, or <b>false</b> if not supported
+	 */
+	public default boolean invokeWhenDrained(int size, Runnable runnable) {
+		return false;
+	}
 	/**
 	 * Closes the connection actively.<p>
 	 *
@@ -27,4 +136,8 @@ public interface ConnectionHandler {
 	public default void disconnectNow() {
 		disconnect();
 	}
+	/** @return counters of the network end, or <code>null</code> if not supported */
+	public default ConnectionStats getStats() {
+		return null;
+	}
 }
\ No newline at end of file
@@ -1,14 +1,44 @@
 package com.xqbase.tuna;
 
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 public class ConnectionSession {
+	/** The IP address and port of a non-IP address */
+	private static final InetSocketAddress NO_ADDRESS = new InetSocketAddress(0);
+
+	private SocketAddress localAddress, remoteAddress;
 	private InetSocketAddress localSocketAddress, remoteSocketAddress;
 
 	public ConnectionSession(InetSocketAddress localSocketAddress,
 			InetSocketAddress remoteSocketAddress) {
-		this.localSocketAddress = localSocketAddress;
-		this.remoteSocketAddress = remoteSocketAddress;
+		this((SocketAddress) localSocketAddress, remoteSocketAddress);
+	}
+
+	/**
+	 * Creates a session of IP or non-IP addresses, e.g. Unix domain socket addresses.
+	 * The IP address and port of a non-IP address are 0.0.0.0:0.
+	 */
+	public ConnectionSession(SocketAddress localAddress, SocketAddress remoteAddress) {
+		this.localAddress = localAddress;
+		this.remoteAddress = remoteAddress;
+		localSocketAddress = toInet(localAddress);
+		remoteSocketAddress = toInet(remoteAddress);
+	}
+
+	private static InetSocketAddress toInet(SocketAddress addr) {
+		return addr == null || addr instanceof InetSocketAddress ?
+				(InetSocketAddress) addr : NO_ADDRESS;
+	}
+
+	/** @return the local address, which may be a non-IP address */
+	public SocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	/** @return the remote address, which may be a non-IP address */
+	public SocketAddress getRemoteAddress() {
+		return remoteAddress;
 	}
 
 	public InetSocketAddress getLocalSocketAddress() {
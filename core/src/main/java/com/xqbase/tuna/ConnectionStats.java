@@ -0,0 +1,31 @@
+package com.xqbase.tuna;
+
+/** A snapshot of counters of a connection, by {@link ConnectionHandler#getStats()} */
+public class ConnectionStats {
+	private long bytesRead, bytesWritten, queuedBytes;
+
+	public ConnectionStats(long bytesRead, long bytesWritten, long queuedBytes) {
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.queuedBytes = queuedBytes;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/** @return bytes queued for writing, including files to transfer */
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten +
+				", queuedBytes=" + queuedBytes;
+	}
+}
\ No newline at end of file
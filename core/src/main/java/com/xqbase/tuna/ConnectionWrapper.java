@@ -35,4 +35,10 @@ public abstract class ConnectionWrapper implements Connection {
 	public void onDisconnect() {
 		connection.onDisconnect();
 	}
+
+	/** Wraps idle events, from the network side to the application side */
+	@Override
+	public void onIdle(int idle) {
+		connection.onIdle(idle);
+	}
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.xqbase.tuna;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.UnsupportedAddressTypeException;
 
 public interface Connector {
 	@FunctionalInterface
@@ -45,6 +47,48 @@ public interface Connector {
 	public Closeable add(ServerConnection serverConnection,
 			InetSocketAddress socketAddress) throws IOException;
 
+	/**
+	 * Registers a {@link ServerConnection}
+	 *
+	 * @param sharded - <code>true</code> to bind the address with SO_REUSEPORT,
+	 *			so each event loop (or each connector) can have its own listener
+	 *			on the same port, and the kernel spreads incoming connections across them.
+	 * @return a {@link Closeable} that will unregister the <code>serverConnection</code>.
+	 *			The connector will automatically unregister all
+	 *			<code>serverConnection</code>s when closing.
+	 *			By default, <code>sharded</code> is ignored.
+	 */
+	public default Closeable add(ServerConnection serverConnection,
+			InetSocketAddress socketAddress, boolean sharded) throws IOException {
+		return add(serverConnection, socketAddress);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection}
+	 *
+	 * @param backlog - The maximum length of the queue of incoming connections,
+	 *			or 0 for the default. By default, the backlog is ignored.
+	 * @see #add(ServerConnection, InetSocketAddress, boolean)
+	 */
+	public default Closeable add(ServerConnection serverConnection,
+			InetSocketAddress socketAddress, boolean sharded, int backlog) throws IOException {
+		return add(serverConnection, socketAddress, sharded);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} listening to any type of address,
+	 * e.g. a Unix domain socket address. By default, only IP addresses are supported.
+	 *
+	 * @throws UnsupportedAddressTypeException If the type of address is not supported.
+	 */
+	public default Closeable add(ServerConnection serverConnection,
+			SocketAddress socketAddress) throws IOException {
+		if (socketAddress instanceof InetSocketAddress) {
+			return add(serverConnection, (InetSocketAddress) socketAddress);
+		}
+		throw new UnsupportedAddressTypeException();
+	}
+
 	/**
 	 * Registers and connects a {@link Connection} to a remote address
 	 *
@@ -56,10 +100,48 @@ public interface Connector {
 	}
 
 	/**
-	 * Registers and connects a {@link Connection} to a remote address
+	 * Registers and connects a {@link Connection} to a remote address.<p>
+	 *
+	 * Connecting may finish later, e.g. after the host name is resolved, or in another
+	 * loop of a multi-reactor connector. Then failures, including binding the local
+	 * address, are reported by {@link Connection#onDisconnect()} rather than thrown.
 	 *
 	 * @throws IOException If the remote address is invalid.
 	 */
 	public void connect(Connection connection,
 			InetSocketAddress socketAddress) throws IOException;
+
+	/**
+	 * Registers and connects a {@link Connection} to a remote address
+	 * from a local address. By default, the local address is ignored.
+	 *
+	 * @param localAddress - The local address to bind, or <code>null</code> for any.
+	 * @throws IOException If the remote address is invalid.
+	 */
+	public default void connect(Connection connection, InetSocketAddress socketAddress,
+			InetSocketAddress localAddress) throws IOException {
+		connect(connection, socketAddress);
+	}
+
+	/**
+	 * Registers and connects a {@link Connection} to any type of address,
+	 * e.g. a Unix domain socket address. By default, only IP addresses are supported.
+	 *
+	 * @throws IOException If the remote address is invalid.
+	 * @throws UnsupportedAddressTypeException If the type of address is not supported.
+	 */
+	public default void connect(Connection connection,
+			SocketAddress socketAddress) throws IOException {
+		if (socketAddress instanceof InetSocketAddress) {
+			connect(connection, (InetSocketAddress) socketAddress);
+			return;
+		}
+		throw new UnsupportedAddressTypeException();
+	}
+
+	/**
+	 * Sets the {@link Resolver} to resolve unresolved addresses when connecting.
+	 * By default, the resolver is ignored.
+	 */
+	public default void setResolver(Resolver resolver) {/**/}
 }
\ No newline at end of file
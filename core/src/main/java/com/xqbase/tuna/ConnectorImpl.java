@@ -1,42 +1,44 @@
 package com.xqbase.tuna;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
-import com.xqbase.tuna.util.ByteArrayQueue;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
-abstract class Attachment {
-	SelectionKey selectionKey;
-
-	abstract void closeChannel();
-
-	void finishClose() {
-		selectionKey.cancel();
-		closeChannel();
-	}
-}
+import com.xqbase.tuna.dns.DnsConfig;
+import com.xqbase.tuna.util.BoundedExecutor;
+import com.xqbase.tuna.util.ByteArrayPool;
 
 /**
  * The encapsulation of a {@link SocketChannel} and its {@link SelectionKey},
@@ -47,52 +49,171 @@ class Client extends Attachment {
 	private static final int STATUS_IDLE = 1;
 	private static final int STATUS_BUSY = 2;
 	private static final int STATUS_DISCONNECTING = 3;
+	/** Pending bytes of the peer which pause relaying */
+	private static final int RELAY_LIMIT = Connection.MAX_BUFFER_SIZE * 2;
+	/** The "Connection Attempt Delay" of RFC 8305 */
+	private static final int ATTEMPT_DELAY = 250;
+	/** Bounds of the adaptive receive size */
+	private static final int MIN_RECV_SIZE = 512;
+	private static final int INITIAL_RECV_SIZE = 2048;
+
+	private static final ClassValue<Boolean> DIRECT_RECV = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return Boolean.valueOf(type.getMethod("onRecv", ByteBuffer.class).
+						getDeclaringClass() != Connection.class);
+			} catch (ReflectiveOperationException e) {
+				return Boolean.FALSE;
+			}
+		}
+	};
 
 	int bufferSize = Connection.MAX_BUFFER_SIZE;
+	/**
+	 * Bytes to read next time within {@link #bufferSize}, which doubles
+	 * after a full read and halves after two reads less than a half
+	 */
+	private int recvSize = INITIAL_RECV_SIZE;
+	private boolean recvShrinking = false;
+	/** <b>true</b> if the last read filled its limit, so more bytes may be ready */
+	boolean recvFull = false;
 	int status = STATUS_IDLE;
+	/** <b>true</b> if resolving or racing {@link #attempts}, without {@link #socketChannel} */
 	boolean resolving = false;
-	ByteArrayQueue queue = new ByteArrayQueue();
+	/** <b>true</b> if {@link Connection#onRecv(ByteBuffer)} is overridden */
+	boolean direct;
+	/** <b>true</b> if queued while IDLE and waiting for {@link ConnectorImpl#flush()} */
+	boolean flushing = false;
+	ConnectorImpl loop;
+	ChunkQueue queue;
+	/** Files to transfer after "queue", or <code>null</code> if never sent */
+	ArrayDeque<FileSegment> files = null;
+	/** Bytes of "files" and bytes queued after them */
+	long filesLength = 0;
+	/** The peer which received data is relayed to, and vice versa */
+	Client relay = null;
+	/** <b>true</b> if reading is paused by a busy {@link #relay} */
+	boolean relayPaused = false;
+	/** <b>true</b> if reading is paused by the output budget of the loop */
+	boolean throttled = false;
+	/** <b>true</b> if accepted and counted by the admission limit */
+	boolean admitted = false;
+	/** Queue sizes which raise {@link Connection#onQueue(int)}, 0 if not set */
+	private int lowWatermark = 0, highWatermark = 0;
+	/** Runs once the queue drains to {@link #drainedSize}, or <code>null</code> */
+	private Runnable drained = null;
+	private int drainedSize = 0;
 	Connection connection;
 	SocketChannel socketChannel;
+	/** Addresses to race, and attempts in progress */
+	private InetSocketAddress[] addrs = null;
+	private int nextAddr = 0;
+	private ArrayList<ConnectAttempt> attempts = null;
+	private TimerHandler.Closeable attemptTimer = null;
+	TimerHandler.Closeable connectTimer = null;
+	/** The local address to bind before connecting, or <code>null</code> */
+	InetSocketAddress localAddress = null;
+	long bytesRead = 0, bytesWritten = 0;
+	/** Idle timeouts in milliseconds, 0 if disabled */
+	private int readIdle = 0, writeIdle = 0, allIdle = 0;
+	/** Loop times of the last read and write */
+	private long lastRead, lastWrite;
+	/** Loop times when idle timeouts were set or idle events were raised */
+	private long readMark, writeMark, allMark;
+	/** One timer for all idle timeouts, re-armed lazily when it expires */
+	private TimerHandler.Closeable idleTimer = null;
 
-	Client(Connection connection) {
+	Client(ConnectorImpl loop, Connection connection) {
+		this.loop = loop;
 		this.connection = connection;
-		connection.setHandler(new ConnectionHandler() {
-			@Override
-			public void send(byte[] b, int off, int len) {
-				write(b, off, len);
-			}
-
-			@Override
-			public void setBufferSize(int bufferSize) {
-				boolean blocked = Client.this.bufferSize == 0;
-				boolean toBlock = bufferSize <= 0;
-				Client.this.bufferSize = Math.max(0,
-						Math.min(bufferSize, Connection.MAX_BUFFER_SIZE));
-				if ((blocked ^ toBlock) && !resolving && isOpen() &&
-						(selectionKey.interestOps() & SelectionKey.OP_CONNECT) == 0) {
-					// may be called before resolve
-					interestOps();
-				}
+		lastRead = lastWrite = loop.now;
+		loop.stats.connections ++;
+		direct = DIRECT_RECV.get(connection.getClass()).booleanValue();
+		queue = new ChunkQueue(loop.chunkPool);
+		connection.setHandler(new Handler());
+	}
+
+	/** The network end of the connection */
+	class Handler implements ConnectionHandler {
+		@Override
+		public void send(byte[] b, int off, int len) {
+			write(ByteBuffer.wrap(b, off, len));
+		}
+
+		@Override
+		public void send(ByteBuffer buffer) {
+			write(buffer);
+		}
+
+		@Override
+		public void sendFile(FileChannel channel, long position, long count) {
+			Client.this.sendFile(channel, position, count);
+		}
+
+		@Override
+		public void setBufferSize(int bufferSize) {
+			boolean blocked = Client.this.bufferSize == 0;
+			boolean toBlock = bufferSize <= 0;
+			Client.this.bufferSize = Math.max(0,
+					Math.min(bufferSize, Connection.MAX_BUFFER_SIZE));
+			if ((blocked ^ toBlock) && !resolving && isOpen() &&
+					(selectionKey.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+				// may be called before resolve
+				interestOps();
 			}
+		}
 
-			@Override
-			public void disconnect() {
-				if (status == STATUS_IDLE) {
-					// must be resolved
-					finishClose();
-				} else if (status == STATUS_BUSY) {
-					status = STATUS_DISCONNECTING;
-				}
+		@Override
+		public void disconnect() {
+			if (status == STATUS_IDLE && length() == 0) {
+				// must be resolved
+				finishClose();
+			} else if (status != STATUS_CLOSED) {
+				status = STATUS_DISCONNECTING;
 			}
+		}
 
-			@Override
-			public void disconnectNow() {
-				if (isOpen()) {
-					finishClose();
-				}
+		@Override
+		public void disconnectNow() {
+			if (isOpen()) {
+				finishClose();
 			}
-		});
+		}
+
+		/** Links with a {@link Client} in the same loop */
+		@Override
+		public boolean relay(ConnectionHandler peer) {
+			return peer instanceof Handler && Client.this.relay(((Handler) peer).getClient());
+		}
+
+		@Override
+		public boolean setWatermarks(int low, int high) {
+			highWatermark = Math.max(0, high);
+			lowWatermark = Math.max(0, Math.min(low, highWatermark));
+			return true;
+		}
+
+		@Override
+		public boolean invokeWhenDrained(int size, Runnable runnable) {
+			Client.this.invokeWhenDrained(size, runnable);
+			return true;
+		}
+
+		@Override
+		public boolean setIdleTimeout(int readIdle, int writeIdle, int allIdle) {
+			Client.this.setIdleTimeout(readIdle, writeIdle, allIdle);
+			return true;
+		}
+
+		@Override
+		public ConnectionStats getStats() {
+			return new ConnectionStats(bytesRead, bytesWritten, length());
+		}
+
+		Client getClient() {
+			return Client.this;
+		}
 	}
 
 	void add(Selector selector, int ops) {
@@ -110,18 +231,30 @@ class Client extends Attachment {
 	 * @throws IOException may throw "Network is unreachable" or "Protocol family unavailable",
 	 *		   and then socketChannel will be closed, and selectionKey will not be created
 	 */
-	void connect(Selector selector, InetSocketAddress socketAddress) throws IOException {
+	void connect(Selector selector, SocketAddress socketAddress) throws IOException {
 		resolving = false;
 		try {
-			socketChannel = SocketChannel.open();
-			socketChannel.configureBlocking(false);
-			socketChannel.socket().setTcpNoDelay(true);
+			if (UnixDomain.isUnix(socketAddress)) {
+				socketChannel = UnixDomain.openSocket();
+				socketChannel.configureBlocking(false);
+			} else {
+				socketChannel = SocketChannel.open();
+				socketChannel.configureBlocking(false);
+				socketChannel.socket().setTcpNoDelay(true);
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 		try {
-			socketChannel.connect(socketAddress);
+			if (localAddress != null) {
+				socketChannel.bind(localAddress);
+			}
+			boolean connected = socketChannel.connect(socketAddress);
 			add(selector, SelectionKey.OP_CONNECT);
+			if (connected) {
+				// e.g. a Unix domain socket, where OP_CONNECT will never be selected
+				loop.invokeLater(this::finishConnectNow);
+			}
 		} catch (IOException e) {
 			// May throw "Network is unreachable" or "Protocol family unavailable",
 			// and then socketChannel will be closed, and selectionKey will not be created
@@ -130,50 +263,448 @@ class Client extends Attachment {
 		}
 	}
 
+	/**
+	 * Connects to <code>addrs</code> with Happy Eyeballs (RFC 8305): starts an attempt
+	 * every 250 milliseconds or when the previous attempt fails,
+	 * and the first connected attempt becomes the channel of this client.
+	 */
+	void connect(InetSocketAddress[] addrs) {
+		this.addrs = addrs;
+		attempts = new ArrayList<>();
+		startAttempt();
+	}
+
+	private void startAttempt() {
+		if (attemptTimer != null) {
+			attemptTimer.close();
+			attemptTimer = null;
+		}
+		while (nextAddr < addrs.length) {
+			SocketChannel channel;
+			try {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			ConnectAttempt attempt = new ConnectAttempt(this, channel);
+			try {
+				if (localAddress != null) {
+					// e.g. "Address family not supported" for the other family
+					channel.bind(localAddress);
+				}
+				channel.connect(addrs[nextAddr ++]);
+				loop.register(attempt, channel, SelectionKey.OP_CONNECT);
+			} catch (IOException e) {
+				// e.g. "Network is unreachable", so try the next address now
+				attempt.closeChannel();
+				continue;
+			}
+			attempts.add(attempt);
+			if (nextAddr < addrs.length) {
+				attemptTimer = loop.postDelayed(this::startAttempt, ATTEMPT_DELAY);
+			}
+			return;
+		}
+		if (attempts.isEmpty()) {
+			// All addresses failed
+			startClose();
+		}
+	}
+
+	/** Called when an attempt is connectable */
+	void finishAttempt(ConnectAttempt attempt) {
+		try {
+			if (!attempt.socketChannel.finishConnect()) {
+				return;
+			}
+		} catch (IOException e) {
+			failAttempt(attempt);
+			return;
+		}
+		attempts.remove(attempt);
+		closeAttempts();
+		loop.stats.connected ++;
+		socketChannel = attempt.socketChannel;
+		selectionKey = attempt.selectionKey;
+		selectionKey.attach(this);
+		resolving = false;
+		finishConnect();
+		// "onConnect()" might call "disconnect()"
+		if (isOpen()) {
+			try {
+				write();
+			} catch (IOException e) {
+				startClose();
+			}
+		}
+	}
+
+	/** Called when connected immediately */
+	private void finishConnectNow() {
+		// May be closed by "disconnectNow()"
+		if (!isOpen()) {
+			return;
+		}
+		loop.stats.connected ++;
+		finishConnect();
+		// "onConnect()" might call "disconnect()"
+		if (isOpen()) {
+			try {
+				write();
+			} catch (IOException e) {
+				startClose();
+			}
+		}
+	}
+
+	/** Starts the next attempt now, or closes if no attempts left */
+	void failAttempt(ConnectAttempt attempt) {
+		attempt.finishClose();
+		attempts.remove(attempt);
+		startAttempt();
+	}
+
+	/** Cancels other attempts after connected or closed */
+	private void closeAttempts() {
+		if (attemptTimer != null) {
+			attemptTimer.close();
+			attemptTimer = null;
+		}
+		for (ConnectAttempt attempt : attempts) {
+			attempt.finishClose();
+		}
+		attempts = null;
+		addrs = null;
+	}
+
 	void interestOps() {
-		selectionKey.interestOps((bufferSize == 0 ? 0 : SelectionKey.OP_READ) |
+		selectionKey.interestOps((bufferSize == 0 || relayPaused || throttled ? 0 : SelectionKey.OP_READ) |
 				(status == STATUS_IDLE ? 0 : SelectionKey.OP_WRITE));
 	}
 
+	/** @return total bytes of the queue and files */
+	int length() {
+		return (int) Math.min(queue.length() + filesLength, Integer.MAX_VALUE);
+	}
+
+	/** @return bytes to read next time */
+	int recvLimit() {
+		return Math.min(bufferSize, recvSize);
+	}
+
+	/** Counts a read syscall of at most <code>limit</code> bytes, and adapts the receive size */
+	void countRead(int bytes, int limit) {
+		loop.stats.reads ++;
+		recvFull = bytes > 0 && bytes >= limit;
+		if (bytes <= 0) {
+			return;
+		}
+		loop.stats.bytesRead += bytes;
+		bytesRead += bytes;
+		lastRead = loop.now;
+		if (bytes >= recvSize) {
+			recvSize = Math.min(recvSize * 2, Connection.MAX_BUFFER_SIZE);
+			recvShrinking = false;
+		} else if (bytes * 2 < recvSize && recvSize > MIN_RECV_SIZE) {
+			if (recvShrinking) {
+				recvSize /= 2;
+			}
+			recvShrinking = !recvShrinking;
+		} else {
+			recvShrinking = false;
+		}
+	}
+
+	/** Counts a write syscall */
+	private void countWrite(long bytes) {
+		loop.stats.writes ++;
+		if (bytes > 0) {
+			loop.stats.bytesWritten += bytes;
+			bytesWritten += bytes;
+			lastWrite = loop.now;
+		}
+	}
+
+	void setIdleTimeout(int readIdle_, int writeIdle_, int allIdle_) {
+		readIdle = Math.max(0, readIdle_);
+		writeIdle = Math.max(0, writeIdle_);
+		allIdle = Math.max(0, allIdle_);
+		readMark = writeMark = allMark = loop.now;
+		if (idleTimer != null) {
+			idleTimer.close();
+			idleTimer = null;
+		}
+		if (isOpen()) {
+			startIdleTimer();
+		}
+	}
+
+	/** Arms the idle timer at the earliest deadline, without touching it per read or write */
+	private void startIdleTimer() {
+		long deadline = Long.MAX_VALUE;
+		if (readIdle > 0) {
+			deadline = Math.min(deadline, Math.max(lastRead, readMark) + readIdle);
+		}
+		if (writeIdle > 0) {
+			deadline = Math.min(deadline, Math.max(lastWrite, writeMark) + writeIdle);
+		}
+		if (allIdle > 0) {
+			deadline = Math.min(deadline,
+					Math.max(Math.max(lastRead, lastWrite), allMark) + allIdle);
+		}
+		if (deadline < Long.MAX_VALUE) {
+			idleTimer = loop.postAtTime(this::checkIdle, deadline);
+		}
+	}
+
+	/** Raises expired idle events, or re-arms the timer if reads or writes came */
+	private void checkIdle() {
+		idleTimer = null;
+		long now = loop.now;
+		if (readIdle > 0 && now >= Math.max(lastRead, readMark) + readIdle) {
+			readMark = now;
+			onIdle(Connection.READ_IDLE);
+		}
+		if (isOpen() && writeIdle > 0 &&
+				now >= Math.max(lastWrite, writeMark) + writeIdle) {
+			writeMark = now;
+			onIdle(Connection.WRITE_IDLE);
+		}
+		if (isOpen() && allIdle > 0 &&
+				now >= Math.max(Math.max(lastRead, lastWrite), allMark) + allIdle) {
+			allMark = now;
+			onIdle(Connection.ALL_IDLE);
+		}
+		// "onIdle()" might call "disconnect()" or "setIdleTimeout()"
+		if (isOpen() && idleTimer == null) {
+			startIdleTimer();
+		}
+	}
+
+	private void onIdle(int idle) {
+		LoopMonitor.Probe probe = loop.probe;
+		if (probe == null) {
+			connection.onIdle(idle);
+			return;
+		}
+		probe.begin(connection);
+		try {
+			connection.onIdle(idle);
+		} finally {
+			probe.end();
+		}
+	}
+
+	private long writeQueue(ByteBuffer extra) throws IOException {
+		long bytes = queue.write(socketChannel, extra);
+		countWrite(bytes);
+		return bytes;
+	}
+
+	/** Writes the queue and transfers files when writable or flushed */
 	void write() throws IOException {
-		int len = queue.length();
-		int fromLen = len;
-		while (len > 0) {
-			int bytesWritten = socketChannel.write(ByteBuffer.wrap(queue.array(),
-					queue.offset(), len));
-			if (bytesWritten == 0) {
-				unblock(len, fromLen);
+		int fromLen = length();
+		while (queue.length() > 0 || (files != null && !files.isEmpty())) {
+			if (queue.length() > 0 ? writeQueue(null) == 0 : !transferFile()) {
+				loop.stats.partialWrites ++;
+				resumeRelay();
+				unblock(length(), fromLen);
+				boolean idle = status == STATUS_IDLE;
+				if (idle) {
+					status = STATUS_BUSY;
+				}
+				interestOps();
+				if (idle) {
+					// Queued in IDLE status without checking watermarks
+					block(length(), 0);
+				}
+				checkDrained();
 				return;
 			}
-			len = queue.remove(bytesWritten).length();
 		}
-		unblock(len, fromLen);
+		resumeRelay();
+		unblock(0, fromLen);
 		if (status == STATUS_DISCONNECTING) {
 			finishClose();
-		} else {
+		} else if (status != STATUS_IDLE) {
 			status = STATUS_IDLE;
 			interestOps();
 		}
+		checkDrained();
 	}
 
-	void write(byte[] b, int off, int len) {
+	void invokeWhenDrained(int size, Runnable runnable) {
+		if (!isOpen()) {
+			return;
+		}
+		if (length() > size) {
+			drained = runnable;
+			drainedSize = size;
+			return;
+		}
+		drained = null;
+		// Not in this call, so the caller yields to other connections
+		loop.invokeLater(() -> {
+			if (isOpen()) {
+				runnable.run();
+			}
+		});
+	}
+
+	private void checkDrained() {
+		if (drained != null && isOpen() && length() <= drainedSize) {
+			Runnable runnable = drained;
+			drained = null;
+			runnable.run();
+		}
+	}
+
+	/** @return the queue which sent bytes go to, after files if any */
+	private ChunkQueue tail() {
+		// Keep the order after files
+		return files == null || files.isEmpty() ? queue : files.peekLast().after;
+	}
+
+	boolean relay(Client peer) {
+		if (peer == this || peer.loop != loop || relay != null || peer.relay != null ||
+				!isOpen() || !peer.isOpen() || socketChannel == null ||
+				peer.socketChannel == null || !socketChannel.isConnected() ||
+				!peer.socketChannel.isConnected()) {
+			return false;
+		}
+		relay = peer;
+		peer.relay = this;
+		return true;
+	}
+
+	/**
+	 * Reads into the tail of {@link #relay}'s queue without calling <code>onRecv()</code>,
+	 * and pauses reading if the relay is too busy.
+	 */
+	int readRelay() throws IOException {
+		Client peer = relay;
+		ChunkQueue tail = peer.tail();
+		int limit = tail.readLimit(recvLimit());
+		int bytesRead = tail.read(socketChannel, limit);
+		countRead(bytesRead, limit);
+		if (bytesRead <= 0) {
+			return bytesRead;
+		}
+		if (tail != peer.queue) {
+			peer.filesLength += bytesRead;
+		}
+		if (peer.status == STATUS_IDLE && !peer.flushing) {
+			peer.flushing = true;
+			loop.flushes.add(peer);
+		}
+		if (peer.length() >= RELAY_LIMIT) {
+			relayPaused = true;
+			interestOps();
+		}
+		return bytesRead;
+	}
+
+	private void resumeRelay() {
+		if (relay != null && relay.relayPaused && length() < RELAY_LIMIT) {
+			relay.relayPaused = false;
+			relay.interestOps();
+		}
+	}
+
+	/** @return <b>false</b> if the socket is not writable */
+	private boolean transferFile() throws IOException {
+		FileSegment file = files.peek();
+		if (file.count > 0) {
+			long bytesWritten = file.channel.transferTo(file.position, file.count, socketChannel);
+			countWrite(bytesWritten);
+			if (bytesWritten == 0) {
+				if (file.position >= file.channel.size()) {
+					throw new EOFException();
+				}
+				return false;
+			}
+			file.position += bytesWritten;
+			file.count -= bytesWritten;
+			filesLength -= bytesWritten;
+			return true;
+		}
+		// Bytes sent after the file come next
+		files.poll();
+		filesLength -= file.after.length();
+		ChunkQueue after = file.after;
+		file.after = queue;
+		file.close();
+		queue = after;
+		return true;
+	}
+
+	/**
+	 * Small sends in IDLE status are queued and then written together
+	 * by {@link ConnectorImpl#flush()} before the next select,
+	 * and a large send is written immediately after the queued bytes.
+	 */
+	void write(ByteBuffer buffer) {
 		if (status != STATUS_IDLE) {
-			int fromLen = queue.length();
-			block(queue.add(b, off, len).length(), fromLen);
+			int fromLen = length();
+			ChunkQueue tail = tail();
+			int tailLen = tail.length();
+			tail.add(buffer);
+			if (tail != queue) {
+				filesLength += tail.length() - tailLen;
+			}
+			block(length(), fromLen);
+			return;
+		}
+		if (buffer.remaining() < ChunkPool.CHUNK_SIZE) {
+			queue.add(buffer);
+			if (!flushing) {
+				flushing = true;
+				loop.flushes.add(this);
+			}
 			return;
 		}
-		int bytesWritten;
 		try {
-			bytesWritten = socketChannel.write(ByteBuffer.wrap(b, off, len));
+			writeQueue(buffer);
 		} catch (IOException e) {
 			startClose();
 			return;
 		}
-		if (len > bytesWritten) {
-			int fromLen = queue.length();
-			block(queue.add(b, off + bytesWritten, len - bytesWritten).length(), fromLen);
+		if (queue.length() > 0 || buffer.hasRemaining()) {
+			loop.stats.partialWrites ++;
+			queue.add(buffer);
 			status = STATUS_BUSY;
 			interestOps();
+			block(length(), 0);
+		} else {
+			checkDrained();
+		}
+	}
+
+	/** Transfers a file with "sendfile" after the queued bytes, and closes it when done. */
+	void sendFile(FileChannel channel, long position, long count) {
+		if (!isOpen()) {
+			try {
+				channel.close();
+			} catch (IOException e) {/**/}
+			return;
+		}
+		if (files == null) {
+			files = new ArrayDeque<>();
+		}
+		int fromLen = length();
+		files.add(new FileSegment(channel, position, count, new ChunkQueue(loop.chunkPool)));
+		filesLength += count;
+		if (status != STATUS_IDLE) {
+			block(length(), fromLen);
+			return;
+		}
+		status = STATUS_BUSY;
+		try {
+			write();
+		} catch (IOException e) {
+			startClose();
 		}
 	}
 
@@ -182,27 +713,96 @@ class Client extends Attachment {
 	}
 
 	void finishConnect() {
-		Socket socket = socketChannel.socket();
-		InetSocketAddress local = (InetSocketAddress) socket.getLocalSocketAddress();
-		InetSocketAddress remote = (InetSocketAddress) socket.getRemoteSocketAddress();
-		connection.onConnect(new ConnectionSession(local, remote));
+		if (connectTimer != null) {
+			connectTimer.close();
+			connectTimer = null;
+		}
+		SocketAddress local, remote;
+		try {
+			local = socketChannel.getLocalAddress();
+			remote = socketChannel.getRemoteAddress();
+		} catch (IOException e) {
+			// Closed by peer before "onConnect()"
+			local = remote = null;
+		}
+		ConnectionSession session = new ConnectionSession(local, remote);
+		LoopMonitor.Probe probe = loop.probe;
+		if (probe == null) {
+			connection.onConnect(session);
+			return;
+		}
+		probe.begin(connection);
+		try {
+			connection.onConnect(session);
+		} finally {
+			probe.end();
+		}
 	}
 
 	void startClose() {
-		if (isOpen()) {
-			finishClose();
-			// Call "close()" before "onDisconnect()"
-			// to avoid recursive "disconnect()".
+		if (!isOpen()) {
+			return;
+		}
+		finishClose();
+		// Call "close()" before "onDisconnect()"
+		// to avoid recursive "disconnect()".
+		LoopMonitor.Probe probe = loop.probe;
+		if (probe == null) {
 			connection.onDisconnect();
+			return;
+		}
+		probe.begin(connection);
+		try {
+			connection.onDisconnect();
+		} finally {
+			probe.end();
 		}
 	}
 
 	@Override
 	void closeChannel() {
-		try {
-			socketChannel.close();
-		} catch (IOException e) {/**/}
+		if (status != STATUS_CLOSED) {
+			loop.stats.connections --;
+			if (admitted) {
+				admitted = false;
+				loop.root().release();
+			}
+		}
+		if (socketChannel != null) {
+			try {
+				socketChannel.close();
+			} catch (IOException e) {/**/}
+		}
+		if (attempts != null) {
+			closeAttempts();
+		}
+		if (connectTimer != null) {
+			connectTimer.close();
+			connectTimer = null;
+		}
+		if (idleTimer != null) {
+			idleTimer.close();
+			idleTimer = null;
+		}
 		status = STATUS_CLOSED;
+		queue.clear();
+		drained = null;
+		if (relay != null) {
+			Client peer = relay;
+			relay = null;
+			peer.relay = null;
+			if (peer.relayPaused) {
+				peer.relayPaused = false;
+				peer.interestOps();
+			}
+		}
+		if (files != null) {
+			for (FileSegment file : files) {
+				file.close();
+			}
+			files.clear();
+			filesLength = 0;
+		}
 	}
 
 	boolean isOpen() {
@@ -212,23 +812,45 @@ class Client extends Attachment {
 	private boolean blocking = false;
 
 	private void block(int len, int fromLen) {
-		if (fromLen > 0) {
+		if (highWatermark > 0 ? !blocking && len >= highWatermark : fromLen > 0) {
 			blocking = true;
+			loop.stats.queueBlocks ++;
 			connection.onQueue(len);
 		}
 	}
 
 	private void unblock(int len, int fromLen) {
-		if (len == fromLen) {
+		if (len == fromLen || !blocking) {
 			return;
 		}
-		boolean fromBlocking = blocking;
-		if (len == 0) {
+		if (highWatermark > 0) {
+			if (len > lowWatermark) {
+				return;
+			}
+			blocking = false;
+		} else if (len == 0) {
 			blocking = false;
 		}
-		if (fromBlocking) {
-			connection.onQueue(len);
-		}
+		loop.stats.queueUnblocks ++;
+		connection.onQueue(len);
+	}
+}
+
+/** An attempt to connect a {@link Client} to one of its addresses */
+class ConnectAttempt extends Attachment {
+	Client client;
+	SocketChannel socketChannel;
+
+	ConnectAttempt(Client client, SocketChannel socketChannel) {
+		this.client = client;
+		this.socketChannel = socketChannel;
+	}
+
+	@Override
+	void closeChannel() {
+		try {
+			socketChannel.close();
+		} catch (IOException e) {/**/}
 	}
 }
 
@@ -237,33 +859,69 @@ class Client extends Attachment {
  * which corresponds to a TCP Server Socket
  */
 class Server extends Attachment {
-	ServerConnection serverConnection;
+	/** <code>StandardSocketOptions.SO_REUSEPORT</code>, or <code>null</code> before Java 9 */
+	static final SocketOption<Boolean> SO_REUSEPORT = getReusePort();
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePort() {
+		try {
+			return (SocketOption<Boolean>) StandardSocketOptions.class.
+					getField("SO_REUSEPORT").get(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	ConnectorImpl[] loops;
+	ServerConnection[] serverConnections;
+	int next = 0;
+	boolean reusePort;
+	int backlog;
+	/** The address to delete when closing, only for a Unix domain socket */
+	SocketAddress unixAddress = null;
 	ServerSocketChannel serverSocketChannel;
 
 	/**
 	 * Opens a listening port and binds to a given address.
-	 * @param addr - The IP address to bind and the port to listen.
+	 * @param loops - The loops which accepted {@link Client}s are pinned to.
+	 * @param serverConnections - The {@link ServerConnection} for each loop.
+	 * @param addr - The IP address and the port, or the Unix domain socket path, to listen.
+	 * @param reusePort - Whether to set SO_REUSEPORT before binding.
+	 * @param backlog - The backlog of the listening port, 0 for the default.
 	 * @throws IOException If an I/O error occurs when opening the port.
 	 */
-	Server(ServerConnection serverConnection,
-			InetSocketAddress addr) throws IOException {
-		this.serverConnection = serverConnection;
+	Server(ConnectorImpl[] loops, ServerConnection[] serverConnections,
+			SocketAddress addr, boolean reusePort, int backlog) throws IOException {
+		this.loops = loops;
+		this.serverConnections = serverConnections;
+		this.reusePort = reusePort;
+		this.backlog = backlog;
 		bind(addr);
 	}
 
-	void bind(InetSocketAddress addr) throws IOException {
+	void bind(SocketAddress addr) throws IOException {
 		try {
-			serverSocketChannel = ServerSocketChannel.open();
+			if (UnixDomain.isUnix(addr)) {
+				serverSocketChannel = UnixDomain.openServer();
+			} else {
+				serverSocketChannel = ServerSocketChannel.open();
+			}
 			serverSocketChannel.configureBlocking(false);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 		try {
-			serverSocketChannel.socket().bind(addr);
+			if (reusePort) {
+				serverSocketChannel.setOption(SO_REUSEPORT, Boolean.TRUE);
+			}
+			serverSocketChannel.bind(addr, backlog);
 		} catch (IOException e) {
 			closeChannel();
 			throw e;
 		}
+		if (UnixDomain.isUnix(addr)) {
+			unixAddress = addr;
+		}
 	}
 
 	@Override
@@ -271,22 +929,125 @@ class Server extends Attachment {
 		try {
 			serverSocketChannel.close();
 		} catch (IOException e) {/**/}
+		// The socket file is left after closing
+		if (unixAddress != null) {
+			UnixDomain.delete(unixAddress);
+			unixAddress = null;
+		}
 	}
 }
 
-class Timer implements Comparable<Timer> {
-	long uptime;
-	long id;
+class ConnectorMBean implements ConnectorMXBean {
+	/** Attributes read within this time, e.g. in one poll of a JMX client, share a snapshot */
+	private static final int SNAPSHOT_INTERVAL = 1000;
+
+	private ConnectorImpl connector;
+	private ConnectorStats snapshot = null;
+	private long snapshotTime = 0;
+
+	ConnectorMBean(ConnectorImpl connector) {
+		this.connector = connector;
+	}
+
+	private synchronized ConnectorStats stats() {
+		long now = System.currentTimeMillis();
+		if (snapshot == null || now - snapshotTime >= SNAPSHOT_INTERVAL) {
+			snapshot = connector.getStats();
+			snapshotTime = now;
+		}
+		return snapshot;
+	}
+
+	@Override
+	public long getAccepted() {
+		return stats().getAccepted();
+	}
+
+	@Override
+	public long getConnected() {
+		return stats().getConnected();
+	}
+
+	@Override
+	public long getConnections() {
+		return stats().getConnections();
+	}
+
+	@Override
+	public long getBytesRead() {
+		return stats().getBytesRead();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return stats().getBytesWritten();
+	}
+
+	@Override
+	public long getReads() {
+		return stats().getReads();
+	}
+
+	@Override
+	public long getWrites() {
+		return stats().getWrites();
+	}
+
+	@Override
+	public long getPartialWrites() {
+		return stats().getPartialWrites();
+	}
+
+	@Override
+	public long getQueueBlocks() {
+		return stats().getQueueBlocks();
+	}
+
+	@Override
+	public long getQueueUnblocks() {
+		return stats().getQueueUnblocks();
+	}
+
+	@Override
+	public long getQueuedBytes() {
+		return stats().getQueuedBytes();
+	}
+
+	@Override
+	public long getTimers() {
+		return stats().getTimers();
+	}
+
+	@Override
+	public long getThrottles() {
+		return stats().getThrottles();
+	}
+
+	@Override
+	public long getDatagramsRead() {
+		return stats().getDatagramsRead();
+	}
+
+	@Override
+	public long getDatagramsWritten() {
+		return stats().getDatagramsWritten();
+	}
+
+	@Override
+	public long getDatagramsDropped() {
+		return stats().getDatagramsDropped();
+	}
 
 	@Override
-	public int compareTo(Timer o) {
-		int result = Long.compare(uptime, o.uptime);
-		return result == 0 ? Long.compare(id, o.id) : result;
+	public ConnectorStats[] getLoopStats() {
+		return connector.getLoopStats();
 	}
 
 	@Override
-	public String toString() {
-		return new Date(uptime) + "/" + id;
+	public int getTaskQueueSize() {
+		return connector.getExecutor(ConnectorImpl.TASK_USER).getQueueSize() +
+				connector.getExecutor(ConnectorImpl.TASK_DNS).getQueueSize() +
+				connector.getExecutor(ConnectorImpl.TASK_TLS).getQueueSize();
 	}
 }
 
@@ -306,8 +1067,7 @@ class Registrable {
 		}
 		// Rebuild ServerSocketChannel
 		Server server = (Server) att;
-		InetSocketAddress addr = (InetSocketAddress) server.serverSocketChannel.
-				socket().getLocalSocketAddress();
+		SocketAddress addr = server.serverSocketChannel.getLocalAddress();
 		server.closeChannel();
 		server.bind(addr);
 		channel = server.serverSocketChannel;
@@ -315,6 +1075,10 @@ class Registrable {
 
 	void register(Selector selector) throws IOException {
 		if ((interestOps & SelectionKey.OP_CONNECT) != 0) {
+			if (att instanceof ConnectAttempt) {
+				((ConnectAttempt) att).client.failAttempt((ConnectAttempt) att);
+				return;
+			}
 			((Client) att).startClose();
 			// Log.w("Removed a Connection-Pending Channel, interestOps = " + interestOps);
 			return;
@@ -330,68 +1094,668 @@ class Registrable {
 /**
  * The encapsulation of {@link Selector},
  * which makes {@link Client} and {@link Server} working.<p>
+ *
+ * A connector created by {@link #ConnectorImpl(int)} runs in multi-reactor mode:
+ * the connector itself accepts connections in the thread calling {@link #doEvents()},
+ * and each accepted or connected {@link Client} is pinned to one of the worker loops,
+ * which run in their own threads. Calls from a worker loop
+ * (or from a task {@link #execute(Runnable)}d by a worker loop)
+ * to {@link Connector}, {@link EventQueue} and {@link TimerHandler} methods
+ * are routed to that worker loop, so callbacks of a {@link Connection}
+ * and its peers always run in a single thread.
  */
 public class ConnectorImpl implements Connector, TimerHandler, EventQueue, Executor, AutoCloseable {
+	/** The category of tasks {@link #execute(Runnable)}d by users */
+	public static final String TASK_USER = "user";
+	/** The category of host name resolving by the system resolver */
+	public static final String TASK_DNS = "dns";
+	/** The category of delegated tasks of SSL handshakes */
+	public static final String TASK_TLS = "tls";
+
+	private static final ConnectorImpl[] NO_WORKERS = {};
+	private static final int DEFAULT_TASK_LIMIT = 256;
+	private static final int DEFAULT_READ_BUDGET = 4;
+	/** Sockets accepted from one listener in each pass */
+	private static final int ACCEPT_BUDGET = 64;
+	/** Datagrams received from one endpoint in each pass */
+	static final int RECV_BUDGET = 64;
+	private static final int DNS_TASK_LIMIT = 64;
+	private static final int TLS_TASK_LIMIT =
+			Runtime.getRuntime().availableProcessors() * 2;
+
 	private static Pattern hostName = Pattern.compile("[a-zA-Z]");
-	private static long nextId = 0;
+	private static ThreadLocal<ConnectorImpl> currentLoop = new ThreadLocal<>();
+
+	private volatile Selector selector;
+	private boolean interrupted = false;
+	private byte[] buffer = new byte[Connection.MAX_BUFFER_SIZE];
+	private ByteBuffer directBuffer = ByteBuffer.allocateDirect(Connection.MAX_BUFFER_SIZE);
+	/** The time of this pass, cached so that reads and writes need not get the time */
+	long now = System.currentTimeMillis();
+	private TimerWheel timerWheel = new TimerWheel(now);
+	/** Arrays borrowed and released in this loop, see {@link ByteArrayPool#enter()} */
+	private ByteArrayPool pool = new ByteArrayPool();
+	private ArrayList<Client> spareFlushes = new ArrayList<>();
+	/** {@link Client}s with queued bytes to write before the next select */
+	ArrayList<Client> flushes = new ArrayList<>();
+	ChunkPool chunkPool = new ChunkPool();
+	ConnectorStats stats = new ConnectorStats();
+	private MpscQueue<Runnable> eventQueue = new MpscQueue<>();
+	/** <b>true</b> if blocked in select, so the first post must wake up the selector */
+	private AtomicBoolean parked = new AtomicBoolean(false);
+	private Executor executor;
+	private boolean ownExecutor;
+	private ConcurrentHashMap<String, BoundedExecutor> executors;
+	private ConnectorImpl boss = null;
+	private ConnectorImpl[] workers = NO_WORKERS;
+	private Thread[] workerThreads = {};
+	private int nextWorker = 0;
+	private volatile Resolver resolver = null;
+	private volatile int connectTimeout = 0;
+	private volatile int readBudget = DEFAULT_READ_BUDGET;
+	private volatile long outputBudget = 0;
+	/** {@link Client}s whose reading is paused until the queued bytes fall to half the budget */
+	private ArrayList<Client> throttled = new ArrayList<>();
+	/** Listeners of this loop paused by the admission limit */
+	private ArrayList<Server> pausedServers = new ArrayList<>();
+	/** Accepted connections of this connector and all worker loops */
+	private AtomicInteger admitted = new AtomicInteger(0);
+	/** <b>true</b> if some listeners are paused by the admission limit */
+	private AtomicBoolean admissionFull = new AtomicBoolean(false);
+	private volatile int maxConnections = 0, resumeConnections = 0;
+	private LoopMonitor monitor = null;
+	/** Measures this loop if not <code>null</code> */
+	volatile LoopMonitor.Probe probe = null;
+
+	{
+		try {
+			selector = Selector.open();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Creates a connector which runs all events in the thread calling {@link #doEvents()}. */
+	public ConnectorImpl() {
+		this(0);
+	}
+
+	/**
+	 * Creates a connector in multi-reactor mode.
+	 *
+	 * @param workers - The number of worker loops, each runs in its own thread.
+	 *			0 is equivalent to {@link #ConnectorImpl()}.
+	 */
+	public ConnectorImpl(int workers) {
+		this(workers, null);
+	}
+
+	/**
+	 * Creates a connector in multi-reactor mode with the given {@link Executor}.
+	 *
+	 * @param executor - Runs tasks of all categories, and is not shut down when
+	 *			the connector closes. <code>null</code> for a virtual-thread-per-task
+	 *			executor on Java 21 or later, or a cached thread pool otherwise.
+	 * @see #getExecutor(String)
+	 */
+	public ConnectorImpl(int workers, Executor executor) {
+		ownExecutor = executor == null;
+		this.executor = ownExecutor ? newExecutor() : executor;
+		executors = new ConcurrentHashMap<>();
+		executors.put(TASK_USER, new BoundedExecutor(this.executor, DEFAULT_TASK_LIMIT));
+		executors.put(TASK_DNS, new BoundedExecutor(this.executor, DNS_TASK_LIMIT));
+		executors.put(TASK_TLS, new BoundedExecutor(this.executor, TLS_TASK_LIMIT));
+		if (workers <= 0) {
+			return;
+		}
+		this.workers = new ConnectorImpl[workers];
+		workerThreads = new Thread[workers];
+		for (int i = 0; i < workers; i ++) {
+			ConnectorImpl worker = new ConnectorImpl(this);
+			this.workers[i] = worker;
+			workerThreads[i] = new Thread(() -> {
+				currentLoop.set(worker);
+				try {
+					worker.doEvents();
+				} catch (Error | RuntimeException e) {
+					// Rethrow in the thread calling "doEvents()"
+					post(() -> {
+						throw e;
+					});
+				}
+			}, "ConnectorImpl-worker-" + i);
+			workerThreads[i].setDaemon(true);
+			workerThreads[i].start();
+		}
+	}
+
+	private ConnectorImpl(ConnectorImpl boss) {
+		this.boss = boss;
+		executor = boss.executor;
+		executors = boss.executors;
+	}
+
+	/**
+	 * @return a virtual thread per task on Java 21 or later, or a cached pool
+	 *			of daemon threads, which do not keep the JVM alive either
+	 */
+	static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.
+					getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/** @return the worker loop calling this method, or this connector */
+	private ConnectorImpl route() {
+		if (workers.length == 0) {
+			return this;
+		}
+		ConnectorImpl loop = currentLoop.get();
+		return loop != null && loop.boss == this ? loop : this;
+	}
+
+	private ConnectorImpl nextWorker() {
+		ConnectorImpl worker = workers[nextWorker];
+		nextWorker = (nextWorker + 1) % workers.length;
+		return worker;
+	}
+
+	/**
+	 * Runs an action in each worker loop and waits for completion,
+	 * or runs the action immediately if there are no worker loops.
+	 * Typically used to create per-loop servers and timers.<p>
+	 * <b>MUST be called outside worker loops.</b>
+	 *
+	 * @param action - Accepts the loop, which can be used as
+	 *			{@link Connector}, {@link EventQueue}, {@link TimerHandler}
+	 *			and {@link Executor} of the servers created in this loop.
+	 */
+	public void forEachLoop(Consumer<ConnectorImpl> action) {
+		if (workers.length == 0) {
+			action.accept(this);
+			return;
+		}
+		for (ConnectorImpl worker : workers) {
+			worker.invokeAndWait(() -> action.accept(worker));
+		}
+	}
+
+	/**
+	 * Connects in this loop, or in the next worker loop if called outside worker loops
+	 * of a multi-reactor connector, where failures are reported by
+	 * {@link Connection#onDisconnect()} instead of an exception.
+	 *
+	 * @throws IOException if the IP address is invalid or unreachable
+	 */
+	@Override
+	public void connect(Connection connection,
+			InetSocketAddress socketAddress) throws IOException {
+		connect(connection, socketAddress, null);
+	}
+
+	/**
+	 * @param localAddress - The local address to bind before connecting,
+	 *			or <code>null</code> to let the system pick one.
+	 *			Only remote addresses of the same family are tried.
+	 * @throws IOException if the IP address is invalid or unreachable,
+	 *			or the local address cannot be bound,
+	 *			unless connecting in the next worker loop
+	 * @see #connect(Connection, InetSocketAddress)
+	 * @see com.xqbase.tuna.util.SourcePool
+	 */
+	@Override
+	public void connect(Connection connection, InetSocketAddress socketAddress,
+			InetSocketAddress localAddress) throws IOException {
+		if (workers.length > 0) {
+			ConnectorImpl loop = route();
+			if (loop != this) {
+				loop.connect(connection, socketAddress, localAddress);
+				return;
+			}
+			// Pin to a worker loop when connecting outside worker loops
+			ConnectorImpl worker = nextWorker();
+			worker.invokeLater(() -> {
+				try {
+					worker.connect(connection, socketAddress, localAddress);
+				} catch (IOException e) {
+					connection.onDisconnect();
+				}
+			});
+			return;
+		}
+		Client client = new Client(this, connection);
+		client.localAddress = localAddress;
+		client.startConnect();
+		if (!socketAddress.isUnresolved()) {
+			client.connect(selector, socketAddress);
+			startConnectTimer(client);
+			return;
+		}
+		String host = socketAddress.getHostName();
+		int port = socketAddress.getPort();
+		if (host.indexOf(':') >= 0 || !hostName.matcher(host).find()) {
+			// Connect immediately for IPv6 or IPv4 Address 
+			client.connect(selector,
+					new InetSocketAddress(InetAddress.getByName(host), port));
+			startConnectTimer(client);
+			return;
+		}
+		client.resolving = true;
+		startConnectTimer(client);
+		// The callback may be called in any thread, so connect later in this loop
+		getResolver().resolve(host, addrs -> post(() -> {
+			// May be closed by "disconnectNow()" or timeout
+			if (!client.isOpen()) {
+				return;
+			}
+			if (addrs.length == 0) {
+				// Call "onDisconnect()" when Resolving Failure
+				client.startClose();
+				return;
+			}
+			client.connect(interleave(addrs, port));
+		}));
+	}
+
+	/**
+	 * Connects to an IP address and port, or a Unix domain socket path (Java 16 or later)
+	 *
+	 * @see #connect(Connection, InetSocketAddress)
+	 * @see #unixAddress(String)
+	 */
+	@Override
+	public void connect(Connection connection,
+			SocketAddress socketAddress) throws IOException {
+		if (socketAddress instanceof InetSocketAddress) {
+			connect(connection, (InetSocketAddress) socketAddress, null);
+			return;
+		}
+		checkAddress(socketAddress);
+		if (workers.length > 0) {
+			ConnectorImpl loop = route();
+			if (loop != this) {
+				loop.connect(connection, socketAddress);
+				return;
+			}
+			ConnectorImpl worker = nextWorker();
+			worker.invokeLater(() -> {
+				try {
+					worker.connect(connection, socketAddress);
+				} catch (IOException e) {
+					connection.onDisconnect();
+				}
+			});
+			return;
+		}
+		Client client = new Client(this, connection);
+		client.startConnect();
+		client.connect(selector, socketAddress);
+		startConnectTimer(client);
+	}
+
+	private void startConnectTimer(Client client) {
+		if (connectTimeout > 0) {
+			client.connectTimer = timerWheel.add(client::startClose,
+					System.currentTimeMillis() + connectTimeout, 0);
+		}
+	}
+
+	/** Alternates address families, beginning with the family of the first address */
+	private static InetSocketAddress[] interleave(InetAddress[] addrs, int port) {
+		List<InetAddress> preferred = new ArrayList<>();
+		List<InetAddress> others = new ArrayList<>();
+		for (InetAddress addr : addrs) {
+			(addr.getClass() == addrs[0].getClass() ? preferred : others).add(addr);
+		}
+		InetSocketAddress[] socketAddrs = new InetSocketAddress[addrs.length];
+		int i = 0;
+		for (int j = 0; j < preferred.size() || j < others.size(); j ++) {
+			if (j < preferred.size()) {
+				socketAddrs[i ++] = new InetSocketAddress(preferred.get(j), port);
+			}
+			if (j < others.size()) {
+				socketAddrs[i ++] = new InetSocketAddress(others.get(j), port);
+			}
+		}
+		return socketAddrs;
+	}
+
+	/**
+	 * Sets the timeout of connecting, including resolving, for this connector
+	 * and all worker loops, or for the worker loop calling this method.
+	 * {@link Connection#onDisconnect()} is called when the timeout expires.
+	 *
+	 * @param connectTimeout - The timeout in milliseconds, or 0 for no timeout (default).
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			loop.connectTimeout = connectTimeout;
+			return;
+		}
+		this.connectTimeout = connectTimeout;
+		for (ConnectorImpl worker : workers) {
+			worker.connectTimeout = connectTimeout;
+		}
+	}
+
+	/**
+	 * Sets the read budget for this connector and all worker loops,
+	 * or for the worker loop calling this method.<p>
+	 *
+	 * A readable connection is read again in the same pass while the last read
+	 * fills its receive size, up to the budget, so a bulk connection drains
+	 * its socket buffer in fewer passes without starving the others.
+	 *
+	 * @param readBudget - Reads per readable connection in each pass, 4 by default,
+	 *			or 1 to read only once.
+	 */
+	public void setReadBudget(int readBudget) {
+		int budget = Math.max(1, readBudget);
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			loop.readBudget = budget;
+			return;
+		}
+		this.readBudget = budget;
+		for (ConnectorImpl worker : workers) {
+			worker.readBudget = budget;
+		}
+	}
+
+	/**
+	 * Sets the output budget for this connector and each worker loop,
+	 * or for the worker loop calling this method.<p>
+	 *
+	 * When the bytes queued for writing in a loop exceed the budget,
+	 * a connection whose reading queues more bytes is paused, so the fastest
+	 * producers are paused first. All of them are resumed when the queued bytes
+	 * fall to half the budget. Queued bytes are counted in {@link #getStats()}.
+	 *
+	 * @param outputBudget - The budget in bytes, or 0 for no budget (default).
+	 */
+	public void setOutputBudget(long outputBudget) {
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			loop.outputBudget = outputBudget;
+			return;
+		}
+		this.outputBudget = outputBudget;
+		for (ConnectorImpl worker : workers) {
+			worker.outputBudget = outputBudget;
+		}
+	}
+
+	/**
+	 * Sets the admission limit of accepted connections for this connector and
+	 * all worker loops. Accepting is paused when the live accepted connections
+	 * reach <code>maxConnections</code>, and resumed when they fall to
+	 * <code>resumeConnections</code>, so pending connections wait in the backlog.
+	 *
+	 * @param maxConnections - The limit, or 0 for no limit (default).
+	 * @param resumeConnections - The low watermark to resume accepting.
+	 * @see #add(ServerConnection, InetSocketAddress, boolean, int)
+	 */
+	public void setMaxConnections(int maxConnections, int resumeConnections) {
+		ConnectorImpl root = root();
+		root.resumeConnections = Math.min(resumeConnections, maxConnections);
+		root.maxConnections = maxConnections;
+		root.checkAdmission();
+	}
+
+	/** @return live accepted connections of this connector and all worker loops */
+	public int getAdmitted() {
+		return root().admitted.get();
+	}
+
+	ConnectorImpl root() {
+		return boss == null ? this : boss;
+	}
+
+	/** Called in any loop when an admitted connection closes */
+	void release() {
+		if (admitted.decrementAndGet() <= resumeConnections && admissionFull.get()) {
+			checkAdmission();
+		}
+	}
+
+	/** Resumes paused listeners in all loops if admission is available */
+	private void checkAdmission() {
+		if ((maxConnections == 0 || admitted.get() <= resumeConnections) &&
+				admissionFull.compareAndSet(true, false)) {
+			post(this::resumeAccept);
+			for (ConnectorImpl worker : workers) {
+				worker.post(worker::resumeAccept);
+			}
+		}
+	}
+
+	private void resumeAccept() {
+		for (Server server : pausedServers) {
+			if (server.selectionKey.isValid()) {
+				server.selectionKey.interestOps(SelectionKey.OP_ACCEPT);
+			}
+		}
+		pausedServers.clear();
+	}
+
+	/**
+	 * Sets the {@link Resolver} of this connector and all worker loops,
+	 * or of the worker loop calling this method.
+	 * A {@link Resolver} shared by worker loops must be thread-safe.
+	 */
+	@Override
+	public void setResolver(Resolver resolver) {
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			loop.resolver = resolver;
+			return;
+		}
+		this.resolver = resolver;
+		for (ConnectorImpl worker : workers) {
+			worker.resolver = resolver;
+		}
+	}
+
+	/**
+	 * @return the {@link Resolver} of this loop, which is a {@link DnsResolver}
+	 *			of {@link DnsConfig#getDefault()} by default, or the system resolver
+	 *			if no name servers are configured
+	 */
+	public Resolver getResolver() {
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			return loop.getResolver();
+		}
+		if (resolver == null) {
+			DnsConfig config = DnsConfig.getDefault();
+			resolver = config.getNameservers().isEmpty() ?
+					Resolver.system(getExecutor(TASK_DNS)) : new DnsResolver(this, config);
+		}
+		return resolver;
+	}
+
+	void register(Attachment att, SelectableChannel channel, int ops) throws IOException {
+		att.selectionKey = channel.register(selector, ops, att);
+	}
 
-	private volatile Selector selector;
-	private boolean interrupted = false;
-	private byte[] buffer = new byte[Connection.MAX_BUFFER_SIZE];
-	private Map<Timer, Runnable> timerMap = new TreeMap<>();
-	private Queue<Runnable> eventQueue = new ConcurrentLinkedQueue<>();
-	private ExecutorService executor = Executors.newCachedThreadPool();
+	/** @return whether Unix domain sockets (Java 16 or later) are supported */
+	public static boolean isUnixSupported() {
+		return UnixDomain.isSupported();
+	}
 
-	{
-		try {
-			selector = Selector.open();
+	/**
+	 * @return a Unix domain socket address of the given path
+	 * @throws UnsupportedOperationException if Unix domain sockets are not supported
+	 * @see #isUnixSupported()
+	 */
+	public static SocketAddress unixAddress(String path) {
+		return UnixDomain.of(path);
+	}
+
+	private static void checkAddress(SocketAddress socketAddress) {
+		if (!(socketAddress instanceof InetSocketAddress) &&
+				!UnixDomain.isUnix(socketAddress)) {
+			throw new UnsupportedAddressTypeException();
+		}
+	}
+
+	/** @return whether sharded listeners (SO_REUSEPORT) are supported */
+	public static boolean isShardingSupported() {
+		if (Server.SO_REUSEPORT == null) {
+			return false;
+		}
+		try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+			return serverSocketChannel.supportedOptions().contains(Server.SO_REUSEPORT);
 		} catch (IOException e) {
-			throw new RuntimeException(e);
+			return false;
 		}
 	}
 
-	/** @throws IOException if no IP address for the <code>host</code> could be found */
+	/**
+	 * In multi-reactor mode, the <code>serverConnection</code> is shared by all worker loops
+	 * and {@link ServerConnection#get()} is called in the worker loop which
+	 * the accepted connection is pinned to. If called in a worker loop,
+	 * the server is registered to that worker loop only.<p>
+	 *
+	 * If <code>sharded</code> and SO_REUSEPORT is supported, each worker loop
+	 * (or this connector without worker loops) binds its own listener,
+	 * otherwise <code>sharded</code> is ignored.
+	 *
+	 * @see #add(Function, InetSocketAddress, boolean)
+	 * @see #isShardingSupported()
+	 */
 	@Override
-	public void connect(Connection connection,
+	public Connector.Closeable add(ServerConnection serverConnection,
+			InetSocketAddress socketAddress, boolean sharded) throws IOException {
+		return add(loop -> serverConnection, socketAddress, sharded, 0);
+	}
+
+	/** @see #add(ServerConnection, InetSocketAddress, boolean) */
+	@Override
+	public Connector.Closeable add(ServerConnection serverConnection,
 			InetSocketAddress socketAddress) throws IOException {
-		Client client = new Client(connection);
-		client.startConnect();
-		if (!socketAddress.isUnresolved()) {
-			client.connect(selector, socketAddress);
-			return;
-		}
-		String host = socketAddress.getHostName();
-		int port = socketAddress.getPort();
-		if (host.indexOf(':') >= 0 || !hostName.matcher(host).find()) {
-			// Connect immediately for IPv6 or IPv4 Address 
-			client.connect(selector,
-					new InetSocketAddress(InetAddress.getByName(host), port));
-			return;
+		return add(loop -> serverConnection, socketAddress, false, 0);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} listening to
+	 * an IP address and port, or a Unix domain socket path (Java 16 or later)
+	 *
+	 * @see #add(Function, SocketAddress, boolean, int)
+	 */
+	@Override
+	public Connector.Closeable add(ServerConnection serverConnection,
+			SocketAddress socketAddress) throws IOException {
+		return add(loop -> serverConnection, socketAddress, false, 0);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} with the backlog of the listening port
+	 *
+	 * @see #add(ServerConnection, InetSocketAddress, boolean)
+	 * @see #setMaxConnections(int, int)
+	 */
+	@Override
+	public Connector.Closeable add(ServerConnection serverConnection,
+			InetSocketAddress socketAddress, boolean sharded, int backlog) throws IOException {
+		return add(loop -> serverConnection, socketAddress, sharded, backlog);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} for each loop,
+	 * which is useful for a stateful server that must run in a single thread.
+	 *
+	 * @see #add(Function, InetSocketAddress, boolean)
+	 */
+	public Connector.Closeable add(Function<ConnectorImpl, ? extends ServerConnection>
+			serverConnections, InetSocketAddress socketAddress) throws IOException {
+		return add(serverConnections, socketAddress, false);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} for each loop,
+	 * which is useful for a stateful server that must run in a single thread.
+	 *
+	 * @param serverConnections - Returns the {@link ServerConnection}
+	 *			for connections pinned to the given loop.
+	 * @param sharded - Whether to bind a listener for each loop with SO_REUSEPORT.
+	 * @return a {@link Connector.Closeable} that will unregister
+	 *			the <code>serverConnection</code>s.
+	 * @see #forEachLoop(Consumer)
+	 */
+	public Connector.Closeable add(Function<ConnectorImpl, ? extends ServerConnection>
+			serverConnections, InetSocketAddress socketAddress,
+			boolean sharded) throws IOException {
+		return add(serverConnections, socketAddress, sharded, 0);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} for each loop,
+	 * with the backlog of the listening port(s).
+	 *
+	 * @param backlog - The backlog, or 0 for the default.
+	 * @see #add(Function, InetSocketAddress, boolean)
+	 */
+	public Connector.Closeable add(Function<ConnectorImpl, ? extends ServerConnection>
+			serverConnections, InetSocketAddress socketAddress,
+			boolean sharded, int backlog) throws IOException {
+		return add(serverConnections, (SocketAddress) socketAddress, sharded, backlog);
+	}
+
+	/**
+	 * Registers a {@link ServerConnection} for each loop, listening to
+	 * an IP address and port, or a Unix domain socket path (Java 16 or later).
+	 * A Unix domain socket listener is never sharded,
+	 * and its socket file is deleted when unregistered.
+	 *
+	 * @see #add(Function, InetSocketAddress, boolean, int)
+	 * @see #unixAddress(String)
+	 */
+	public Connector.Closeable add(Function<ConnectorImpl, ? extends ServerConnection>
+			serverConnections, SocketAddress socketAddress,
+			boolean sharded, int backlog) throws IOException {
+		checkAddress(socketAddress);
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			return loop.add(serverConnections, socketAddress, sharded, backlog);
 		}
-		client.resolving = true;
-		execute(() -> {
-			try {
-				// Resolve in Executor then Connect later
-				InetAddress addr = InetAddress.getByName(host);
-				invokeLater(() -> {
+		boolean reusePort = sharded && socketAddress instanceof InetSocketAddress &&
+				isShardingSupported();
+		if (reusePort && workers.length > 0) {
+			// Bind a listener for each worker loop
+			List<Connector.Closeable> closeables = new ArrayList<>();
+			IOException[] e_ = {null};
+			for (ConnectorImpl worker : workers) {
+				worker.invokeAndWait(() -> {
 					try {
-						client.connect(selector, new InetSocketAddress(addr, port));
+						closeables.add(worker.add(serverConnections,
+								socketAddress, true, backlog));
 					} catch (IOException e) {
-						// Call "onDisconnect()" when Connecting Failure
-						connection.onDisconnect();
+						e_[0] = e;
 					}
 				});
-			} catch (IOException e) {
-				// Call "onDisconnect()" when Resolving Failure
-				invokeLater(connection::onDisconnect);
+				if (e_[0] != null) {
+					closeables.forEach(Connector.Closeable::close);
+					throw e_[0];
+				}
 			}
-		});
-	}
-
-	@Override
-	public Connector.Closeable add(ServerConnection serverConnection,
-			InetSocketAddress socketAddress) throws IOException {
-		Server server = new Server(serverConnection, socketAddress);
+			return () -> closeables.forEach(Connector.Closeable::close);
+		}
+		ConnectorImpl[] loops = workers.length == 0 ? new ConnectorImpl[] {this} : workers;
+		ServerConnection[] serverConnections_ = new ServerConnection[loops.length];
+		for (int i = 0; i < loops.length; i ++) {
+			serverConnections_[i] = serverConnections.apply(loops[i]);
+		}
+		Server server = new Server(loops, serverConnections_,
+				socketAddress, reusePort, backlog);
 		try {
 			server.selectionKey = server.serverSocketChannel.
 					register(selector, SelectionKey.OP_ACCEPT, server);
@@ -405,39 +1769,123 @@ public class ConnectorImpl implements Connector, TimerHandler, EventQueue, Execu
 		};
 	}
 
+	/**
+	 * Opens a UDP endpoint bound to a local address, registered in this connector,
+	 * or in a worker loop in multi-reactor mode, like {@link #connect(Connection, String, int)}.
+	 * {@link DatagramConnection#setHandler(DatagramHandler)} and other callbacks
+	 * are called in that loop.
+	 *
+	 * @param localAddress - The local address to bind, or port 0 for any port.
+	 * @return a {@link Connector.Closeable} that will close the endpoint.
+	 *			The connector will automatically close all endpoints when closing.
+	 * @throws IOException If the address cannot be bound.
+	 * @see DatagramServer
+	 */
+	public Connector.Closeable open(DatagramConnection connection,
+			InetSocketAddress localAddress) throws IOException {
+		ConnectorImpl loop = route();
+		if (loop == this && workers.length > 0) {
+			loop = nextWorker();
+		}
+		DatagramChannel datagramChannel = DatagramChannel.open();
+		DatagramEndpoint endpoint;
+		try {
+			datagramChannel.configureBlocking(false);
+			datagramChannel.bind(localAddress);
+			endpoint = new DatagramEndpoint(loop, connection, datagramChannel);
+		} catch (IOException e) {
+			datagramChannel.close();
+			throw e;
+		}
+		// The channel must be registered in its loop
+		loop.invokeLater(endpoint::register);
+		ConnectorImpl loop_ = loop;
+		return () -> loop_.invokeLater(endpoint::close);
+	}
+
+	/**
+	 * Accepts up to {@link #ACCEPT_BUDGET} sockets from a listener,
+	 * and pauses the listener if the admission limit is reached.
+	 */
+	private void accept(Server server) {
+		ConnectorImpl root = root();
+		for (int n = 0; n < ACCEPT_BUDGET; n ++) {
+			int max = root.maxConnections;
+			if (max > 0 && root.admitted.get() >= max) {
+				server.selectionKey.interestOps(0);
+				pausedServers.add(server);
+				root.admissionFull.set(true);
+				// Connections may be closed before "admissionFull" is set
+				root.checkAdmission();
+				return;
+			}
+			SocketChannel socketChannel;
+			try {
+				socketChannel = server.serverSocketChannel.accept();
+				if (socketChannel == null) {
+					return;
+				}
+				socketChannel.configureBlocking(false);
+				if (server.unixAddress == null) {
+					socketChannel.socket().setTcpNoDelay(true);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			root.admitted.incrementAndGet();
+			int i = server.next;
+			server.next = (i + 1) % server.loops.length;
+			ConnectorImpl loop = server.loops[i];
+			ServerConnection serverConnection = server.serverConnections[i];
+			if (loop == this) {
+				accept(serverConnection, socketChannel);
+			} else {
+				loop.invokeLater(() -> loop.accept(serverConnection, socketChannel));
+			}
+		}
+	}
+
+	private void accept(ServerConnection serverConnection, SocketChannel socketChannel) {
+		stats.accepted ++;
+		Client client = new Client(this, serverConnection.get());
+		client.admitted = true;
+		client.socketChannel = socketChannel;
+		client.add(selector, SelectionKey.OP_READ);
+		client.finishConnect();
+	}
+
 	/** Consume events until interrupted */
 	public void doEvents() {
 		while (!isInterrupted()) {
-			Iterator<Map.Entry<Timer, Runnable>> it = timerMap.entrySet().iterator();
-			if (it.hasNext()) {
-				long timeout = it.next().getKey().uptime - System.currentTimeMillis();
-				doEvents(timeout > 0 ? timeout : 0);
-			} else {
+			long uptime = timerWheel.nextTime();
+			if (uptime < 0) {
 				doEvents(-1);
+			} else {
+				long timeout = uptime - System.currentTimeMillis();
+				doEvents(timeout > 0 ? timeout : 0);
 			}
 		}
 	}
 
 	private void invokeQueue() {
-		long now = System.currentTimeMillis();
-		List<Runnable> runnables = new ArrayList<>();
-		Iterator<Map.Entry<Timer, Runnable>> it = timerMap.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry<Timer, Runnable> entry = it.next();
-			if (entry.getKey().uptime > now) {
-				break;
+		LoopMonitor.Probe probe_ = probe;
+		if (probe_ == null) {
+			now = System.currentTimeMillis();
+			timerWheel.expire(now);
+			Runnable runnable;
+			while ((runnable = eventQueue.poll()) != null) {
+				runnable.run();
 			}
-			runnables.add(entry.getValue());
-			it.remove();
-		}
-		// call run() after iteration since run() may change timerMap
-		for (Runnable runnable : runnables) {
-			runnable.run();
+			return;
 		}
+		long t = System.nanoTime();
+		now = System.currentTimeMillis();
+		timerWheel.expire(now);
 		Runnable runnable;
 		while ((runnable = eventQueue.poll()) != null) {
-			runnable.run();
+			probe_.run(runnable);
 		}
+		probe_.recordQueue(t);
 	}
 
 	private static boolean shortTime(long millis) {
@@ -520,17 +1968,47 @@ public class ConnectorImpl implements Connector, TimerHandler, EventQueue, Execu
 	 *			whether or not user-defined events raised.<br>
 	 */
 	public boolean doEvents(long timeout) {
+		pool.enter();
+		try {
+			return pass(timeout);
+		} finally {
+			ByteArrayPool.exit();
+		}
+	}
+
+	private boolean pass(long timeout) {
+		flush();
 		long t = System.currentTimeMillis();
 		int keySize;
 		try {
-			keySize = timeout == 0 ? selector.selectNow() :
-					timeout < 0 ? selector.select() : selector.select(timeout);
+			if (timeout == 0) {
+				keySize = selector.selectNow();
+			} else {
+				parked.set(true);
+				// Events posted before parking will not wake up the selector
+				keySize = !eventQueue.isEmpty() ? selector.selectNow() :
+						timeout < 0 ? selector.select() : selector.select(timeout);
+				parked.set(false);
+			}
 		} catch (IOException e) {
+			parked.set(false);
 			throw new RuntimeException(e);
 		}
 		checkEpoll(timeout, t, keySize);
+		now = System.currentTimeMillis();
+		LoopMonitor.Probe probe_ = probe;
+		long passStart = 0;
+		if (probe_ != null) {
+			probe_.thread = Thread.currentThread();
+			passStart = System.nanoTime();
+		}
 		if (keySize == 0) {
 			invokeQueue();
+			flush();
+			resumeThrottled();
+			if (probe_ != null) {
+				probe_.recordPass(passStart);
+			}
 			return false;
 		}
 
@@ -540,44 +2018,39 @@ public class ConnectorImpl implements Connector, TimerHandler, EventQueue, Execu
 				continue;
 			}
 			if (key.isAcceptable()) {
-				Server server = (Server) key.attachment();
-				SocketChannel socketChannel;
-				try {
-					socketChannel = server.serverSocketChannel.accept();
-					if (socketChannel == null) {
-						continue;
-					}
-					socketChannel.configureBlocking(false);
-					socketChannel.socket().setTcpNoDelay(true);
-				} catch (IOException e) {
-					throw new RuntimeException(e);
+				accept((Server) key.attachment());
+				continue;
+			}
+			Object att = key.attachment();
+			if (att instanceof DnsChannel) {
+				((DnsChannel) att).receive();
+				continue;
+			}
+			if (att instanceof DatagramEndpoint) {
+				DatagramEndpoint endpoint = (DatagramEndpoint) att;
+				if (key.isReadable()) {
+					endpoint.receive();
+				}
+				// May be closed in "onRecv()"
+				if (key.isValid() && key.isWritable()) {
+					endpoint.write();
 				}
-				Client client = new Client(server.serverConnection.get());
-				client.socketChannel = socketChannel;
-				client.add(selector, SelectionKey.OP_READ);
-				client.finishConnect();
 				continue;
 			}
-			Client client = (Client) key.attachment();
+			if (att instanceof ConnectAttempt) {
+				((ConnectAttempt) att).client.finishAttempt((ConnectAttempt) att);
+				continue;
+			}
+			Client client = (Client) att;
 			try {
-				if (key.isReadable()) {
-					int bytesRead = client.socketChannel.
-							read(ByteBuffer.wrap(buffer, 0, client.bufferSize));
-					if (bytesRead > 0) {
-						client.connection.onRecv(buffer, 0, bytesRead);
-						// may be closed by "onRecv"
-						if (!key.isValid()) {
-							continue;
-						}
-					} else if (bytesRead < 0) {
-						client.startClose();
-						// Disconnected, so skip onQueue and onConnect
-						continue;
-					}
+				if (key.isReadable() && !read(client, key, probe_)) {
+					// Closed, so skip onQueue and onConnect
+					continue;
 				}
 				if (key.isWritable()) {
 					client.write();
 				} else if (key.isConnectable() && client.socketChannel.finishConnect()) {
+					stats.connected ++;
 					client.finishConnect();
 					// "onConnect()" might call "disconnect()"
 					if (client.isOpen()) {
@@ -590,38 +2063,293 @@ public class ConnectorImpl implements Connector, TimerHandler, EventQueue, Execu
 		}
 		selectedKeys.clear();
 		invokeQueue();
+		flush();
+		resumeThrottled();
+		if (probe_ != null) {
+			probe_.recordPass(passStart);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a readable {@link Client} up to {@link #readBudget} times,
+	 * while each read fills its receive size.
+	 *
+	 * @return <b>false</b> if the client is closed
+	 */
+	private boolean read(Client client, SelectionKey key,
+			LoopMonitor.Probe probe_) throws IOException {
+		long budget = outputBudget;
+		for (int i = readBudget; i > 0; i --) {
+			long queued = chunkPool.queuedBytes;
+			if (client.relay != null) {
+				if (client.readRelay() < 0) {
+					client.startClose();
+					return false;
+				}
+			} else {
+				int limit = client.recvLimit();
+				directBuffer.clear();
+				directBuffer.limit(limit);
+				int bytesRead = client.socketChannel.read(directBuffer);
+				client.countRead(bytesRead, limit);
+				if (bytesRead < 0) {
+					client.startClose();
+					return false;
+				}
+				if (bytesRead > 0) {
+					directBuffer.flip();
+					if (probe_ != null) {
+						probe_.begin(client.connection);
+					}
+					try {
+						if (client.direct) {
+							client.connection.onRecv(directBuffer);
+						} else {
+							directBuffer.get(buffer, 0, bytesRead);
+							client.connection.onRecv(buffer, 0, bytesRead);
+						}
+					} finally {
+						if (probe_ != null) {
+							probe_.end();
+						}
+					}
+					// may be closed by "onRecv"
+					if (!key.isValid()) {
+						return false;
+					}
+				}
+			}
+			if (budget > 0 && chunkPool.queuedBytes > budget &&
+					chunkPool.queuedBytes > queued && client.isOpen()) {
+				throttle(client);
+			}
+			// "onRecv()", a busy relay or the output budget may pause reading
+			if (!client.recvFull || client.bufferSize == 0 ||
+					client.relayPaused || client.throttled) {
+				break;
+			}
+		}
 		return true;
 	}
 
+	private void throttle(Client client) {
+		if (!client.throttled) {
+			client.throttled = true;
+			throttled.add(client);
+			stats.throttles ++;
+			client.interestOps();
+		}
+	}
+
+	/** Resumes throttled {@link Client}s after the queued bytes fall to half the budget */
+	private void resumeThrottled() {
+		long budget = outputBudget;
+		if (throttled.isEmpty() || (budget > 0 && chunkPool.queuedBytes > budget / 2)) {
+			return;
+		}
+		for (Client client : throttled) {
+			client.throttled = false;
+			if (client.isOpen()) {
+				client.interestOps();
+			}
+		}
+		throttled.clear();
+	}
+
+	/** Writes all bytes queued in this pass with one gathering write per {@link Client} */
+	private void flush() {
+		if (flushes.isEmpty()) {
+			return;
+		}
+		// "flushes" may be added by "onQueue()" or "onDisconnect()"
+		ArrayList<Client> clients = flushes;
+		flushes = spareFlushes;
+		spareFlushes = clients;
+		for (Client client : clients) {
+			client.flushing = false;
+			if (client.isOpen()) {
+				try {
+					client.write();
+				} catch (IOException e) {
+					client.startClose();
+				}
+			}
+		}
+		clients.clear();
+	}
+
 	@Override
 	public TimerHandler.Closeable postAtTime(Runnable runnable, long uptime) {
-		Timer timer = new Timer();
-		timer.uptime = uptime;
-		timer.id = nextId;
-		nextId ++;
-		timerMap.put(timer, runnable);
-		return () -> timerMap.remove(timer);
+		if (workers.length > 0) {
+			ConnectorImpl loop = route();
+			if (loop != this) {
+				return loop.postAtTime(runnable, uptime);
+			}
+		}
+		return timerWheel.add(runnable, uptime, 0);
+	}
+
+	/** Reuses one timer for all periods, rather than posting a new one each period. */
+	@Override
+	public TimerHandler.Closeable scheduleAtTime(Runnable runnable, long uptime, long period) {
+		if (workers.length > 0) {
+			ConnectorImpl loop = route();
+			if (loop != this) {
+				return loop.scheduleAtTime(runnable, uptime, period);
+			}
+		}
+		return timerWheel.add(runnable, uptime, period);
 	}
 
 	@Override
 	public void invokeLater(Runnable runnable) {
+		route().post(runnable);
+	}
+
+	private void post(Runnable runnable) {
 		eventQueue.offer(runnable);
-		try {
-			selector.wakeup();
-		} catch (ClosedSelectorException e) {/**/}
+		// Only the first post after parking wakes up the selector
+		if (parked.get() && parked.compareAndSet(true, false)) {
+			try {
+				selector.wakeup();
+			} catch (ClosedSelectorException e) {/**/}
+		}
 	}
 
+	/**
+	 * Executes a task in the category {@link #TASK_USER}.
+	 *
+	 * @see #execute(String, Runnable)
+	 */
 	@Override
 	public void execute(Runnable runnable) {
-		executor.execute(runnable);
+		execute(TASK_USER, runnable);
+	}
+
+	/**
+	 * Executes a task in the executor of a category, which runs a limited number of
+	 * tasks at a time and queues the others. If called in a worker loop,
+	 * {@link #invokeLater(Runnable)} in the task will return to that worker loop.
+	 *
+	 * @see #getExecutor(String)
+	 */
+	public void execute(String category, Runnable runnable) {
+		BoundedExecutor executor_ = getExecutor(category);
+		ConnectorImpl loop = currentLoop.get();
+		if (loop == null) {
+			executor_.execute(runnable);
+			return;
+		}
+		executor_.execute(() -> {
+			currentLoop.set(loop);
+			try {
+				runnable.run();
+			} finally {
+				currentLoop.remove();
+			}
+		});
+	}
+
+	/**
+	 * Returns the executor of a category, which is shared by all worker loops.
+	 * The limit (256 by default, 64 for {@link #TASK_DNS} and twice the number of
+	 * processors for {@link #TASK_TLS}) can be changed and the queue can be monitored.
+	 */
+	public BoundedExecutor getExecutor(String category) {
+		return executors.computeIfAbsent(category,
+				k -> new BoundedExecutor(executor, DEFAULT_TASK_LIMIT));
+	}
+
+	/**
+	 * Sets the {@link LoopMonitor} of this connector and all worker loops,
+	 * or of the worker loop calling this method.
+	 *
+	 * @param monitor - The monitor, or <code>null</code> to stop monitoring.
+	 */
+	public void setMonitor(LoopMonitor monitor) {
+		ConnectorImpl loop = route();
+		if (loop != this) {
+			loop.attachMonitor(monitor);
+			return;
+		}
+		attachMonitor(monitor);
+		for (ConnectorImpl worker : workers) {
+			worker.attachMonitor(monitor);
+		}
+	}
+
+	private synchronized void attachMonitor(LoopMonitor monitor_) {
+		if (monitor != null) {
+			monitor.detach(probe);
+		}
+		monitor = monitor_;
+		probe = monitor_ == null ? null : monitor_.attach();
+		// Read by the loop after the next select
+		timerWheel.probe = probe;
+	}
+
+	/**
+	 * Returns a snapshot of counters of this connector and all worker loops.
+	 * Counters are read without synchronization, so a snapshot taken outside
+	 * the loops may be slightly out of date.
+	 */
+	public ConnectorStats getStats() {
+		ConnectorStats snapshot = new ConnectorStats();
+		addStats(snapshot);
+		for (ConnectorImpl worker : workers) {
+			worker.addStats(snapshot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns a snapshot of counters of each loop, this connector first and then
+	 * each worker loop, so that a busy or an idle worker loop can be told.
+	 *
+	 * @see #getStats()
+	 */
+	public ConnectorStats[] getLoopStats() {
+		ConnectorStats[] snapshots = new ConnectorStats[workers.length + 1];
+		for (int i = 0; i < snapshots.length; i ++) {
+			snapshots[i] = new ConnectorStats();
+			(i == 0 ? this : workers[i - 1]).addStats(snapshots[i]);
+		}
+		return snapshots;
+	}
+
+	private void addStats(ConnectorStats snapshot) {
+		snapshot.add(stats);
+		snapshot.queuedBytes += chunkPool.queuedBytes;
+		snapshot.timers += timerWheel.size();
+	}
+
+	/**
+	 * Registers a {@link ConnectorMXBean} named
+	 * <code>com.xqbase.tuna:type=Connector,name=<i>name</i></code>
+	 * to the platform MBean server.
+	 *
+	 * @return a {@link Connector.Closeable} that will unregister the MBean.
+	 */
+	public Connector.Closeable registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("com.xqbase.tuna:type=Connector,name=" +
+				ObjectName.quote(name));
+		server.registerMBean(new ConnectorMBean(this), objectName);
+		return () -> {
+			try {
+				server.unregisterMBean(objectName);
+			} catch (JMException e) {/**/}
+		};
 	}
 
 	/**
 	 * Interrupts {@link #doEvents()} or {@link #doEvents(long)}.<p>
+	 * Worker loops keep running until the connector is closed.<p>
 	 * <b>Can be called outside main thread.</b>
 	 */
 	public void interrupt() {
-		invokeLater(() -> interrupted = true);
+		post(() -> interrupted = true);
 	}
 
 	/**
@@ -640,7 +2368,18 @@ public class ConnectorImpl implements Connector, TimerHandler, EventQueue, Execu
 	 */
 	@Override
 	public void close() {
-		executor.shutdown();
+		for (int i = 0; i < workers.length; i ++) {
+			workers[i].interrupt();
+			try {
+				workerThreads[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			workers[i].close();
+		}
+		if (boss == null && ownExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
 		for (SelectionKey key : selector.keys()) {
 			((Attachment) key.attachment()).finishClose();
 		}
@@ -0,0 +1,29 @@
+package com.xqbase.tuna;
+
+/**
+ * The management interface of a {@link ConnectorImpl}
+ *
+ * @see ConnectorImpl#registerMBean(String)
+ * @see ConnectorStats
+ */
+public interface ConnectorMXBean {
+	public long getAccepted();
+	public long getConnected();
+	public long getConnections();
+	public long getBytesRead();
+	public long getBytesWritten();
+	public long getReads();
+	public long getWrites();
+	public long getPartialWrites();
+	public long getQueueBlocks();
+	public long getQueueUnblocks();
+	public long getQueuedBytes();
+	public long getTimers();
+	public long getThrottles();
+	public long getDatagramsRead();
+	public long getDatagramsWritten();
+	public long getDatagramsDropped();
+	/** @see ConnectorImpl#getLoopStats() */
+	public ConnectorStats[] getLoopStats();
+	public int getTaskQueueSize();
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.xqbase.tuna;
+
+/**
+ * Counters of a {@link ConnectorImpl}, which are updated by each loop without
+ * synchronization, and a snapshot of them by {@link ConnectorImpl#getStats()}.
+ */
+public class ConnectorStats {
+	long accepted = 0, connected = 0, connections = 0;
+	long bytesRead = 0, bytesWritten = 0, reads = 0, writes = 0, partialWrites = 0;
+	long queueBlocks = 0, queueUnblocks = 0, queuedBytes = 0, timers = 0, throttles = 0;
+	long datagramsRead = 0, datagramsWritten = 0, datagramsDropped = 0;
+
+	ConnectorStats() {/**/}
+
+	void add(ConnectorStats stats) {
+		accepted += stats.accepted;
+		connected += stats.connected;
+		connections += stats.connections;
+		bytesRead += stats.bytesRead;
+		bytesWritten += stats.bytesWritten;
+		reads += stats.reads;
+		writes += stats.writes;
+		partialWrites += stats.partialWrites;
+		queueBlocks += stats.queueBlocks;
+		queueUnblocks += stats.queueUnblocks;
+		queuedBytes += stats.queuedBytes;
+		timers += stats.timers;
+		throttles += stats.throttles;
+		datagramsRead += stats.datagramsRead;
+		datagramsWritten += stats.datagramsWritten;
+		datagramsDropped += stats.datagramsDropped;
+	}
+
+	/** @return number of accepted sockets */
+	public long getAccepted() {
+		return accepted;
+	}
+
+	/** @return number of sockets connected to remote addresses */
+	public long getConnected() {
+		return connected;
+	}
+
+	/** @return number of open connections, including connecting ones */
+	public long getConnections() {
+		return connections;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/** @return number of read syscalls */
+	public long getReads() {
+		return reads;
+	}
+
+	/** @return number of write syscalls, including gathering writes and file transfers */
+	public long getWrites() {
+		return writes;
+	}
+
+	/** @return number of writes which left bytes queued */
+	public long getPartialWrites() {
+		return partialWrites;
+	}
+
+	/** @return number of {@link Connection#onQueue(int)} events raised by growing queues */
+	public long getQueueBlocks() {
+		return queueBlocks;
+	}
+
+	/** @return number of {@link Connection#onQueue(int)} events raised by draining queues */
+	public long getQueueUnblocks() {
+		return queueUnblocks;
+	}
+
+	/** @return bytes queued for writing */
+	public long getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	/** @return number of pending timers */
+	public long getTimers() {
+		return timers;
+	}
+
+	/** @return number of connections whose reading is paused by the output budget */
+	public long getThrottles() {
+		return throttles;
+	}
+
+	/** @return number of datagrams received */
+	public long getDatagramsRead() {
+		return datagramsRead;
+	}
+
+	/** @return number of datagrams sent */
+	public long getDatagramsWritten() {
+		return datagramsWritten;
+	}
+
+	/** @return number of datagrams failed to send */
+	public long getDatagramsDropped() {
+		return datagramsDropped;
+	}
+
+	@Override
+	public String toString() {
+		return "accepted=" + accepted + ", connected=" + connected +
+				", connections=" + connections + ", bytesRead=" + bytesRead +
+				", bytesWritten=" + bytesWritten + ", reads=" + reads +
+				", writes=" + writes + ", partialWrites=" + partialWrites +
+				", queueBlocks=" + queueBlocks + ", queueUnblocks=" + queueUnblocks +
+				", queuedBytes=" + queuedBytes + ", timers=" + timers +
+				", throttles=" + throttles + ", datagramsRead=" + datagramsRead +
+				", datagramsWritten=" + datagramsWritten +
+				", datagramsDropped=" + datagramsDropped;
+	}
+}
\ No newline at end of file
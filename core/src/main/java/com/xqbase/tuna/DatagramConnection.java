@@ -0,0 +1,32 @@
+package com.xqbase.tuna;
+
+import java.net.SocketAddress;
+
+/**
+ * The APPLICATION end of a datagram endpoint, registered by
+ * {@link ConnectorImpl#open(DatagramConnection, java.net.InetSocketAddress)}
+ *
+ * @see DatagramServer
+ */
+public interface DatagramConnection {
+	/**
+	 * A {@link DatagramHandler} will be set by {@link ConnectorImpl}
+	 * when the endpoint is registered in its loop.
+	 */
+	public default void setHandler(DatagramHandler handler) {/**/}
+	/**
+	 * Consumes a received datagram in the APPLICATION end of the endpoint.
+	 * The array is reused after this call.
+	 *
+	 * @param from the address of the sender
+	 */
+	public default void onRecv(SocketAddress from, byte[] b, int off, int len) {/**/}
+	/**
+	 * Consumes queue (queued or completed sending) events in the APPLICATION end of the endpoint.
+	 *
+	 * @param size total size of the queued datagrams, 0 for complete sending
+	 */
+	public default void onQueue(int size) {/**/}
+	/** Consumes closing events, after the endpoint is closed by the APPLICATION end */
+	public default void onClose() {/**/}
+}
\ No newline at end of file
@@ -0,0 +1,184 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+
+import com.xqbase.tuna.util.ByteArrayPool;
+
+/**
+ * The encapsulation of a {@link DatagramChannel} and its {@link SelectionKey},
+ * which corresponds to a UDP socket. <b>Must be called in its loop.</b>
+ */
+class DatagramEndpoint extends Attachment implements DatagramHandler {
+	/** Larger than the maximum UDP payload (65,507 bytes) */
+	private static final int MAX_DATAGRAM_SIZE = 65536;
+
+	private static class Pending {
+		SocketAddress to;
+		byte[] b;
+		int len;
+
+		Pending(SocketAddress to, byte[] b, int len) {
+			this.to = to;
+			this.b = b;
+			this.len = len;
+		}
+	}
+
+	ConnectorImpl loop;
+	DatagramConnection connection;
+	DatagramChannel datagramChannel;
+	InetSocketAddress localAddress;
+
+	private ArrayDeque<Pending> queue = new ArrayDeque<>();
+	private int queuedBytes = 0;
+	private boolean open = true;
+
+	DatagramEndpoint(ConnectorImpl loop, DatagramConnection connection,
+			DatagramChannel datagramChannel) throws IOException {
+		this.loop = loop;
+		this.connection = connection;
+		this.datagramChannel = datagramChannel;
+		localAddress = (InetSocketAddress) datagramChannel.getLocalAddress();
+	}
+
+	/** Called in the loop after the channel is bound */
+	void register() {
+		if (!open) {
+			return;
+		}
+		try {
+			loop.register(this, datagramChannel, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		connection.setHandler(this);
+	}
+
+	/** Called by {@link ConnectorImpl} when the channel is readable */
+	void receive() {
+		// One pooled buffer for a batch of datagrams
+		byte[] b = ByteArrayPool.borrow(MAX_DATAGRAM_SIZE);
+		ByteBuffer bb = ByteBuffer.wrap(b);
+		LoopMonitor.Probe probe = loop.probe;
+		try {
+			for (int n = 0; n < ConnectorImpl.RECV_BUDGET && open; n ++) {
+				bb.clear();
+				SocketAddress from;
+				try {
+					from = datagramChannel.receive(bb);
+				} catch (IOException e) {
+					return;
+				}
+				if (from == null) {
+					return;
+				}
+				int len = bb.position();
+				loop.stats.datagramsRead ++;
+				loop.stats.bytesRead += len;
+				if (probe == null) {
+					connection.onRecv(from, b, 0, len);
+					continue;
+				}
+				probe.begin(connection);
+				try {
+					connection.onRecv(from, b, 0, len);
+				} finally {
+					probe.end();
+				}
+			}
+		} finally {
+			ByteArrayPool.release(b);
+		}
+	}
+
+	/** Called by {@link ConnectorImpl} when the channel is writable */
+	void write() {
+		while (!queue.isEmpty()) {
+			Pending pending = queue.peek();
+			if (!trySend(pending.to, pending.b, 0, pending.len)) {
+				return;
+			}
+			queue.poll();
+			ByteArrayPool.release(pending.b);
+			queuedBytes -= pending.len;
+			loop.stats.queuedBytes -= pending.len;
+		}
+		selectionKey.interestOps(SelectionKey.OP_READ);
+		connection.onQueue(0);
+	}
+
+	/** @return <code>false</code> if the socket buffer is full */
+	private boolean trySend(SocketAddress to, byte[] b, int off, int len) {
+		int bytesWritten;
+		try {
+			bytesWritten = datagramChannel.send(ByteBuffer.wrap(b, off, len), to);
+		} catch (IOException | RuntimeException e) {
+			// e.g. "Network is unreachable" or an unresolved address
+			loop.stats.datagramsDropped ++;
+			return true;
+		}
+		if (bytesWritten == 0) {
+			return false;
+		}
+		loop.stats.datagramsWritten ++;
+		loop.stats.bytesWritten += len;
+		return true;
+	}
+
+	@Override
+	public void send(SocketAddress to, byte[] b, int off, int len) {
+		if (!open) {
+			return;
+		}
+		if (queue.isEmpty() && trySend(to, b, off, len)) {
+			return;
+		}
+		byte[] copy = ByteArrayPool.borrow(len);
+		System.arraycopy(b, off, copy, 0, len);
+		if (queue.isEmpty()) {
+			selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		queue.offer(new Pending(to, copy, len));
+		queuedBytes += len;
+		loop.stats.queuedBytes += len;
+		connection.onQueue(queuedBytes);
+	}
+
+	@Override
+	public TimerHandler.Closeable postAtTime(Runnable runnable, long uptime) {
+		return loop.postAtTime(runnable, uptime);
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	@Override
+	public void close() {
+		if (open) {
+			finishClose();
+			connection.onClose();
+		}
+	}
+
+	@Override
+	void closeChannel() {
+		open = false;
+		try {
+			datagramChannel.close();
+		} catch (IOException e) {/**/}
+		for (Pending pending : queue) {
+			ByteArrayPool.release(pending.b);
+		}
+		queue.clear();
+		loop.stats.queuedBytes -= queuedBytes;
+		queuedBytes = 0;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.xqbase.tuna;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * The NETWORK end of a datagram endpoint.
+ * Timers posted by the handler run in the loop of the endpoint.
+ */
+public interface DatagramHandler extends TimerHandler {
+	/**
+	 * Sends a datagram, equivalent to <code>send(to, b, 0, b.length).</code>
+	 */
+	public default void send(SocketAddress to, byte[] b) {
+		send(to, b, 0, b.length);
+	}
+	/**
+	 * Sends a datagram in the application end. The array can be reused after this call.
+	 * If the socket buffer is full, the datagram is queued and
+	 * {@link DatagramConnection#onQueue(int)} is raised.
+	 */
+	public void send(SocketAddress to, byte[] b, int off, int len);
+	/** @return the bound local address */
+	public InetSocketAddress getLocalAddress();
+	/** Closes the endpoint immediately regardless queued datagrams. */
+	public void close();
+}
\ No newline at end of file
@@ -0,0 +1,145 @@
+package com.xqbase.tuna;
+
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A {@link DatagramConnection} which maps each peer address to a pseudo-connection,
+ * generated by a {@link ServerConnection} like a TCP server.<p>
+ *
+ * Each datagram from a peer is passed to {@link Connection#onRecv(byte[], int, int)},
+ * and each <code>send()</code> of the connection is sent as a datagram to the peer.
+ * {@link Connection#onQueue(int)} of all peers is raised by the queue of the endpoint.
+ * A peer is disconnected when nothing is received within the idle timeout,
+ * and all peers are disconnected when the endpoint is closed.<p>
+ *
+ * {@link ConnectionHandler#setBufferSize(int)} of a peer is ignored,
+ * because the socket is shared by all peers and datagrams cannot be held back,
+ * so a connection should drop data it cannot consume.<p>
+ *
+ * <b>Not thread-safe</b>, and runs in the loop of the endpoint.
+ */
+public class DatagramServer implements DatagramConnection {
+	private static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
+	private class Peer implements ConnectionHandler {
+		SocketAddress addr;
+		Connection connection;
+		long lastRecv = 0;
+		boolean connected = true;
+
+		Peer(SocketAddress addr, Connection connection) {
+			this.addr = addr;
+			this.connection = connection;
+		}
+
+		@Override
+		public void send(byte[] b, int off, int len) {
+			if (connected) {
+				handler.send(addr, b, off, len);
+			}
+		}
+
+		/** Ignored, see {@link DatagramServer} */
+		@Override
+		public void setBufferSize(int bufferSize) {/**/}
+
+		@Override
+		public void disconnect() {
+			if (connected) {
+				connected = false;
+				peers.remove(addr);
+			}
+		}
+	}
+
+	private ServerConnection serverConnection;
+	private int idleTimeout;
+	private DatagramHandler handler;
+	private TimerHandler.Closeable timer = null;
+	/** In access order by receiving, so idle peers come first */
+	private LinkedHashMap<SocketAddress, Peer> peers = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Creates a server whose peers are disconnected after idle for 60 seconds */
+	public DatagramServer(ServerConnection serverConnection) {
+		this(serverConnection, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/** @param idleTimeout - The idle timeout of peers in milliseconds, or 0 for no timeout */
+	public DatagramServer(ServerConnection serverConnection, int idleTimeout) {
+		this.serverConnection = serverConnection;
+		this.idleTimeout = idleTimeout;
+	}
+
+	@Override
+	public void setHandler(DatagramHandler handler) {
+		this.handler = handler;
+		if (idleTimeout > 0) {
+			int period = Math.max(idleTimeout / 4, 1);
+			timer = handler.scheduleDelayed(this::expire, period, period);
+		}
+	}
+
+	@Override
+	public void onRecv(SocketAddress from, byte[] b, int off, int len) {
+		Peer peer = peers.get(from);
+		if (peer == null) {
+			Connection connection = serverConnection.get();
+			peer = new Peer(from, connection);
+			peers.put(from, peer);
+			connection.setHandler(peer);
+			connection.onConnect(new ConnectionSession(handler.getLocalAddress(), from));
+			// May be disconnected in "onConnect()"
+			if (!peer.connected) {
+				return;
+			}
+		}
+		peer.lastRecv = System.currentTimeMillis();
+		peer.connection.onRecv(b, off, len);
+	}
+
+	@Override
+	public void onQueue(int size) {
+		for (Peer peer : peers.values().toArray(new Peer[0])) {
+			peer.connection.onQueue(size);
+		}
+	}
+
+	@Override
+	public void onClose() {
+		if (timer != null) {
+			timer.close();
+			timer = null;
+		}
+		for (Peer peer : peers.values().toArray(new Peer[0])) {
+			// May be disconnected by another peer
+			if (peer.connected) {
+				peer.connected = false;
+				peers.remove(peer.addr);
+				peer.connection.onDisconnect();
+			}
+		}
+	}
+
+	private void expire() {
+		long expire = System.currentTimeMillis() - idleTimeout;
+		Iterator<Peer> it = peers.values().iterator();
+		while (it.hasNext()) {
+			Peer peer = it.next();
+			if (peer.lastRecv > expire) {
+				return;
+			}
+			it.remove();
+			peer.connected = false;
+			peer.connection.onDisconnect();
+			// "onDisconnect()" may change peers
+			it = peers.values().iterator();
+		}
+	}
+
+	/** @return number of peers */
+	public int getPeers() {
+		return peers.size();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.nio.channels.DatagramChannel;
+
+/** The {@link DatagramChannel} of a query of a {@link DnsResolver} registered in its loop */
+class DnsChannel extends Attachment {
+	DnsResolver resolver;
+	DatagramChannel datagramChannel;
+
+	DnsChannel(DnsResolver resolver, DatagramChannel datagramChannel) {
+		this.resolver = resolver;
+		this.datagramChannel = datagramChannel;
+	}
+
+	/** Called by {@link ConnectorImpl} when the channel is readable */
+	void receive() {
+		resolver.receive(this);
+	}
+
+	@Override
+	void closeChannel() {
+		try {
+			datagramChannel.close();
+		} catch (IOException e) {/**/}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,430 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import com.xqbase.tuna.dns.DnsConfig;
+import com.xqbase.tuna.dns.DnsPacket;
+import com.xqbase.tuna.packet.PacketException;
+
+/**
+ * A non-blocking DNS client running in the loop of a {@link ConnectorImpl},
+ * which queries A and AAAA records over UDP, and caches the results
+ * as long as their TTLs (or the SOA minimum for negative results).
+ * Identical lookups in flight share one pair of queries.<p>
+ *
+ * Names in the hosts file are resolved without queries, and relative names are
+ * expanded by the search domains and "ndots" of the configuration.
+ * Single-label names without search domains, truncated or failed responses
+ * and timeouts fall back to the system resolver.<p>
+ *
+ * <b>Not thread-safe, and must be called in the loop.</b>
+ * Callbacks are called in the loop.
+ */
+public class DnsResolver implements Resolver {
+	private static final int MAX_CACHE_SIZE = 4096;
+	private static final int MAX_TTL = 86400;
+	private static final int MAX_NEGATIVE_TTL = 3600;
+	/** For negative responses without SOA */
+	private static final int DEFAULT_NEGATIVE_TTL = 30;
+	private static final int MAX_PACKET_SIZE = 4096;
+	private static final boolean PREFER_IPV6 =
+			Boolean.getBoolean("java.net.preferIPv6Addresses");
+
+	private static class Cached {
+		InetAddress[] addrs;
+		long expire;
+
+		Cached(InetAddress[] addrs, long expire) {
+			this.addrs = addrs;
+			this.expire = expire;
+		}
+	}
+
+	private class Lookup {
+		String host;
+		/** Names to query in turn, expanded by the search domains */
+		List<String> names;
+		int index = 0;
+		List<Consumer<InetAddress[]>> callbacks = new ArrayList<>();
+		List<Query> queries = new ArrayList<>();
+		List<InetAddress> v4 = new ArrayList<>(), v6 = new ArrayList<>();
+		int ttl = MAX_TTL, negativeTtl = -1, pending = 2;
+
+		Lookup(String host, List<String> names) {
+			this.host = host;
+			this.names = names;
+		}
+	}
+
+	private class Query {
+		Lookup lookup;
+		String name;
+		int type, id, attempt = 0;
+		InetSocketAddress server;
+		/** A socket of its own, so each query comes from a random port */
+		DnsChannel channel = null;
+		TimerHandler.Closeable timer = null;
+
+		Query(Lookup lookup, int type) {
+			this.lookup = lookup;
+			this.type = type;
+			name = lookup.names.get(lookup.index);
+		}
+	}
+
+	private ConnectorImpl loop;
+	private DnsConfig config;
+	private Resolver system;
+	private Random random = new SecureRandom();
+	private ByteBuffer buffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+	private HashMap<Integer, Query> queries = new HashMap<>();
+	private HashMap<String, Lookup> lookups = new HashMap<>();
+	private LinkedHashMap<String, Cached> cache =
+			new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+			return size() > MAX_CACHE_SIZE;
+		}
+	};
+	private long hits = 0, negativeHits = 0, misses = 0, coalesced = 0,
+			queriesSent = 0, timeouts = 0, fallbacks = 0;
+
+	/**
+	 * Creates a resolver running in <code>loop</code>.<p>
+	 * In multi-reactor mode, each worker loop should have its own resolver.
+	 *
+	 * @see ConnectorImpl#forEachLoop(Consumer)
+	 */
+	public DnsResolver(ConnectorImpl loop, DnsConfig config) {
+		this.loop = loop;
+		this.config = config;
+		system = Resolver.system(loop.getExecutor(ConnectorImpl.TASK_DNS));
+	}
+
+	@Override
+	public void resolve(String host, Consumer<InetAddress[]> callback) {
+		String name = host.toLowerCase(Locale.ROOT);
+		boolean absolute = name.endsWith(".");
+		if (absolute) {
+			name = name.substring(0, name.length() - 1);
+		}
+		InetAddress[] addrs = config.getHosts().get(name);
+		if (addrs != null) {
+			hits ++;
+			callback.accept(addrs);
+			return;
+		}
+		List<String> search = config.getSearch();
+		// Relative and absolute names resolve differently with search domains
+		String key = absolute && !search.isEmpty() ? name + "." : name;
+		Cached entry = cache.get(key);
+		if (entry != null) {
+			if (entry.expire > loop.now) {
+				hits ++;
+				if (entry.addrs.length == 0) {
+					negativeHits ++;
+				}
+				callback.accept(entry.addrs);
+				return;
+			}
+			cache.remove(key);
+		}
+		Lookup lookup = lookups.get(key);
+		if (lookup != null) {
+			coalesced ++;
+			lookup.callbacks.add(callback);
+			return;
+		}
+		misses ++;
+		if ((name.indexOf('.') < 0 && search.isEmpty()) ||
+				config.getNameservers().isEmpty()) {
+			// Single-label names may need the domain of this host
+			fallback(host, callback);
+			return;
+		}
+		lookup = new Lookup(key, expand(name, absolute));
+		lookup.callbacks.add(callback);
+		lookups.put(key, lookup);
+		sendQueries(lookup);
+	}
+
+	/**
+	 * @return names to query in turn, like the system resolver:
+	 *			a relative name with fewer dots than "ndots" is tried
+	 *			with the search domains first, and then as an absolute name
+	 */
+	private List<String> expand(String name, boolean absolute) {
+		List<String> search = config.getSearch();
+		if (absolute || search.isEmpty()) {
+			return Collections.singletonList(name);
+		}
+		List<String> names = new ArrayList<>(search.size() + 1);
+		int dots = 0;
+		for (int i = 0; i < name.length(); i ++) {
+			if (name.charAt(i) == '.') {
+				dots ++;
+			}
+		}
+		boolean first = dots >= config.getNdots();
+		if (first) {
+			names.add(name);
+		}
+		for (String domain : search) {
+			names.add(name + "." + domain);
+		}
+		if (!first) {
+			names.add(name);
+		}
+		return names;
+	}
+
+	private void sendQueries(Lookup lookup) {
+		try {
+			send(new Query(lookup, DnsPacket.TYPE_A));
+			send(new Query(lookup, DnsPacket.TYPE_AAAA));
+		} catch (IOException | IllegalArgumentException e) {
+			fail(lookup);
+		}
+	}
+
+	/** Queries the next name of a lookup */
+	private void next(Lookup lookup) {
+		cancel(lookup);
+		lookup.queries.clear();
+		lookup.index ++;
+		lookup.ttl = MAX_TTL;
+		lookup.negativeTtl = -1;
+		lookup.pending = 2;
+		sendQueries(lookup);
+	}
+
+	private void fallback(String host, Consumer<InetAddress[]> callback) {
+		fallbacks ++;
+		system.resolve(host, addrs -> loop.invokeLater(() -> callback.accept(addrs)));
+	}
+
+	private void send(Query query) throws IOException {
+		// Bind a new socket for each attempt, to an ephemeral port chosen by the system,
+		// so a spoofed response must guess the port as well as the ID
+		closeChannel(query);
+		DatagramChannel datagramChannel = DatagramChannel.open();
+		try {
+			datagramChannel.configureBlocking(false);
+			datagramChannel.bind(null);
+			query.channel = new DnsChannel(this, datagramChannel);
+			loop.register(query.channel, datagramChannel, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			datagramChannel.close();
+			query.channel = null;
+			throw e;
+		}
+		int id;
+		do {
+			id = random.nextInt(65536);
+		} while (queries.containsKey(Integer.valueOf(id)));
+		query.id = id;
+		List<InetSocketAddress> nameservers = config.getNameservers();
+		query.server = nameservers.get(query.attempt % nameservers.size());
+		byte[] packet = DnsPacket.query(id, query.name, query.type);
+		queries.put(Integer.valueOf(id), query);
+		if (query.attempt == 0) {
+			query.lookup.queries.add(query);
+		}
+		query.timer = loop.postDelayed(() -> timeout(query), config.getTimeout());
+		queriesSent ++;
+		query.channel.datagramChannel.send(ByteBuffer.wrap(packet), query.server);
+	}
+
+	private static void closeChannel(Query query) {
+		if (query.channel != null) {
+			query.channel.finishClose();
+			query.channel = null;
+		}
+	}
+
+	private void timeout(Query query) {
+		timeouts ++;
+		queries.remove(Integer.valueOf(query.id));
+		closeChannel(query);
+		query.timer = null;
+		query.attempt ++;
+		if (query.attempt < config.getAttempts()) {
+			try {
+				send(query);
+				return;
+			} catch (IOException e) {/**/}
+		}
+		fail(query.lookup);
+	}
+
+	/** Called when the channel of a query is readable */
+	void receive(DnsChannel channel) {
+		while (true) {
+			buffer.clear();
+			SocketAddress from;
+			try {
+				from = channel.datagramChannel.receive(buffer);
+			} catch (IOException e) {
+				// Queries in flight will time out
+				return;
+			}
+			if (from == null) {
+				return;
+			}
+			DnsPacket packet;
+			try {
+				packet = DnsPacket.parse(buffer.array(), 0, buffer.position());
+			} catch (PacketException e) {
+				continue;
+			}
+			Query query = queries.get(Integer.valueOf(packet.getId()));
+			// Ignore spoofed or stale responses
+			if (query == null || query.channel != channel || !query.server.equals(from) ||
+					packet.getType() != query.type ||
+					!packet.getName().equals(query.name)) {
+				continue;
+			}
+			queries.remove(Integer.valueOf(query.id));
+			query.timer.close();
+			query.timer = null;
+			// The only response expected on this channel
+			closeChannel(query);
+			Lookup lookup = query.lookup;
+			int rcode = packet.getRcode();
+			if (packet.isTruncated() || (rcode != DnsPacket.RCODE_NOERROR &&
+					rcode != DnsPacket.RCODE_NXDOMAIN)) {
+				fail(lookup);
+				return;
+			}
+			List<InetAddress> addrs = packet.getAddresses();
+			if (addrs.isEmpty()) {
+				lookup.negativeTtl = Math.max(lookup.negativeTtl, packet.getNegativeTtl());
+			} else {
+				(query.type == DnsPacket.TYPE_A ? lookup.v4 : lookup.v6).addAll(addrs);
+				lookup.ttl = Math.min(lookup.ttl, packet.getTtl());
+			}
+			lookup.pending --;
+			// Wait for both families, which may come in any order from their sockets,
+			// even if one is NXDOMAIN
+			if (lookup.pending > 0) {
+				return;
+			}
+			if (lookup.v4.isEmpty() && lookup.v6.isEmpty() &&
+					lookup.index + 1 < lookup.names.size()) {
+				next(lookup);
+			} else {
+				complete(lookup);
+			}
+			return;
+		}
+	}
+
+	private void complete(Lookup lookup) {
+		finish(lookup);
+		InetAddress[] addrs;
+		long ttl;
+		if (lookup.v4.isEmpty() && lookup.v6.isEmpty()) {
+			addrs = NO_ADDRESSES;
+			ttl = lookup.negativeTtl < 0 ? DEFAULT_NEGATIVE_TTL :
+					Math.min(lookup.negativeTtl, MAX_NEGATIVE_TTL);
+		} else {
+			List<InetAddress> list = new ArrayList<>(lookup.v4.size() + lookup.v6.size());
+			list.addAll(PREFER_IPV6 ? lookup.v6 : lookup.v4);
+			list.addAll(PREFER_IPV6 ? lookup.v4 : lookup.v6);
+			addrs = list.toArray(new InetAddress[0]);
+			ttl = lookup.ttl;
+		}
+		if (ttl > 0) {
+			cache.put(lookup.host, new Cached(addrs, loop.now + ttl * 1000));
+		}
+		for (Consumer<InetAddress[]> callback : lookup.callbacks) {
+			callback.accept(addrs);
+		}
+	}
+
+	/** Falls back to the system resolver for all callbacks of the lookup */
+	private void fail(Lookup lookup) {
+		if (lookups.get(lookup.host) != lookup) {
+			return;
+		}
+		finish(lookup);
+		for (Consumer<InetAddress[]> callback : lookup.callbacks) {
+			fallback(lookup.host, callback);
+		}
+	}
+
+	private void finish(Lookup lookup) {
+		lookups.remove(lookup.host);
+		cancel(lookup);
+	}
+
+	/** Cancels the queries in flight of a lookup */
+	private void cancel(Lookup lookup) {
+		for (Query query : lookup.queries) {
+			if (query.timer != null) {
+				queries.remove(Integer.valueOf(query.id));
+				query.timer.close();
+				query.timer = null;
+			}
+			closeChannel(query);
+		}
+	}
+
+	/** Removes all cached results */
+	public void clearCache() {
+		cache.clear();
+	}
+
+	/** @return number of lookups answered by the hosts file or the cache */
+	public long getHits() {
+		return hits;
+	}
+
+	/** @return number of lookups answered by the cache with no addresses */
+	public long getNegativeHits() {
+		return negativeHits;
+	}
+
+	/** @return number of lookups not in the cache and not coalesced */
+	public long getMisses() {
+		return misses;
+	}
+
+	/** @return number of lookups sharing the queries of an identical lookup */
+	public long getCoalesced() {
+		return coalesced;
+	}
+
+	/** @return number of queries sent, including retries */
+	public long getQueries() {
+		return queriesSent;
+	}
+
+	/** @return number of queries timed out */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	/** @return number of lookups falling back to the system resolver */
+	public long getFallbacks() {
+		return fallbacks;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.xqbase.tuna;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+import com.xqbase.tuna.util.ByteArrayPool;
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/**
+ * A filter in front of a {@link ConnectionFilter} which wraps sent data,
+ * added by {@link Connection#appendFilter(ConnectionFilter)}.<p>
+ *
+ * Files are read one chunk at a time, and only while few bytes are queued
+ * in the network end, so a large file is never wrapped and queued in one call.
+ * Data sent before a file is done are held and sent after it.
+ */
+class FileFilter extends ConnectionFilter {
+	private static final int CHUNK_SIZE = Connection.MAX_BUFFER_SIZE / 2;
+	/** Reads no more chunks while this many bytes are queued in the network end */
+	private static final int MAX_QUEUED = Connection.MAX_BUFFER_SIZE;
+	/** Bytes to read in one loop pass, so other connections are not stalled */
+	private static final int READ_BUDGET = Connection.MAX_BUFFER_SIZE * 4;
+
+	/** A part of a file to read, and the data sent after it */
+	private static class PendingFile {
+		FileChannel channel;
+		long position, end;
+		ByteArrayQueue after = new ByteArrayQueue();
+
+		PendingFile(FileChannel channel, long position, long end) {
+			this.channel = channel;
+			this.position = position;
+			this.end = end;
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {/**/}
+			after.clear();
+		}
+	}
+
+	private ArrayDeque<PendingFile> files = new ArrayDeque<>();
+	private boolean reading = false, waiting = false, disconnecting = false;
+
+	@Override
+	boolean wrapsSend() {
+		return false;
+	}
+
+	@Override
+	public void send(byte[] b, int off, int len) {
+		if (files.isEmpty()) {
+			super.send(b, off, len);
+		} else {
+			files.peekLast().after.add(b, off, len);
+		}
+	}
+
+	@Override
+	public void send(ByteBuffer buffer) {
+		if (files.isEmpty()) {
+			getHandler().send(buffer);
+		} else {
+			super.send(buffer);
+		}
+	}
+
+	@Override
+	public void sendFile(FileChannel channel, long position, long count) {
+		if (disconnecting) {
+			try {
+				channel.close();
+			} catch (IOException e) {/**/}
+			return;
+		}
+		files.add(new PendingFile(channel, position, position + count));
+		// Otherwise the file is read after the pending ones
+		if (!reading && !waiting) {
+			read();
+		}
+	}
+
+	private long queued() {
+		ConnectionStats stats = getHandler().getStats();
+		return stats == null ? 0 : stats.getQueuedBytes();
+	}
+
+	/** Reads and sends chunks until too many bytes are queued or all files are done */
+	private void read() {
+		waiting = false;
+		reading = true;
+		byte[] b = ByteArrayPool.borrow(CHUNK_SIZE);
+		try {
+			ByteBuffer bb = ByteBuffer.wrap(b);
+			int budget = READ_BUDGET;
+			boolean drainable = true;
+			while (!files.isEmpty()) {
+				PendingFile file = files.peek();
+				if (file.position >= file.end) {
+					files.poll();
+					try {
+						file.channel.close();
+					} catch (IOException e) {/**/}
+					ByteArrayQueue after = file.after;
+					if (after.length() > 0) {
+						super.send(after.array(), after.offset(), after.length());
+						after.clear();
+					}
+					continue;
+				}
+				if (drainable && (budget <= 0 || queued() >= MAX_QUEUED)) {
+					if (getHandler().invokeWhenDrained(MAX_QUEUED / 2, this::read)) {
+						waiting = true;
+						return;
+					}
+					// Not supported, so read the files at once
+					drainable = false;
+				}
+				bb.clear();
+				bb.limit((int) Math.min(file.end - file.position, CHUNK_SIZE));
+				int bytesRead = file.channel.read(bb, file.position);
+				if (bytesRead < 0) {
+					throw new EOFException();
+				}
+				file.position += bytesRead;
+				budget -= bytesRead;
+				super.send(b, 0, bytesRead);
+			}
+			if (disconnecting) {
+				disconnecting = false;
+				super.disconnect();
+			}
+		} catch (IOException e) {
+			closeFiles();
+			super.disconnect();
+		} finally {
+			reading = false;
+			ByteArrayPool.release(b);
+		}
+	}
+
+	private void closeFiles() {
+		for (PendingFile file : files) {
+			file.close();
+		}
+		files.clear();
+	}
+
+	/** Disconnects after all files are sent */
+	@Override
+	public void disconnect() {
+		if (files.isEmpty()) {
+			super.disconnect();
+		} else {
+			disconnecting = true;
+		}
+	}
+
+	@Override
+	public void disconnectNow() {
+		closeFiles();
+		getHandler().disconnectNow();
+	}
+
+	@Override
+	public void onDisconnect() {
+		closeFiles();
+		super.onDisconnect();
+	}
+}
\ No newline at end of file
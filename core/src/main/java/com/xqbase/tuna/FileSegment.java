@@ -0,0 +1,25 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/** A part of a file to transfer, and the bytes queued after it */
+class FileSegment {
+	FileChannel channel;
+	long position, count;
+	ChunkQueue after;
+
+	FileSegment(FileChannel channel, long position, long count, ChunkQueue after) {
+		this.channel = channel;
+		this.position = position;
+		this.count = count;
+		this.after = after;
+	}
+
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {/**/}
+		after.clear();
+	}
+}
\ No newline at end of file
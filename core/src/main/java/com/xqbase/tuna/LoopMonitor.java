@@ -0,0 +1,223 @@
+package com.xqbase.tuna;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.xqbase.tuna.util.Histogram;
+
+/**
+ * Measures event loops of {@link ConnectorImpl}s: time of each selector pass,
+ * time of running queued events and timers, and time of each callback
+ * (<code>onRecv()</code>, <code>onConnect()</code>, <code>onDisconnect()</code>,
+ * queued events and timers), all in microseconds.<p>
+ *
+ * A callback running longer than the threshold is reported with the class of
+ * its {@link Connection} (or event), and a stack sample taken by a watchdog thread
+ * while the callback is still running.<p>
+ *
+ * A callback costs two calls of {@link System#nanoTime()} and two volatile writes,
+ * so the monitor can be left on in production.
+ *
+ * @see ConnectorImpl#setMonitor(LoopMonitor)
+ */
+public class LoopMonitor implements AutoCloseable {
+	/** A callback running longer than the threshold */
+	public static class SlowCallback {
+		private String target, thread;
+		private long micros;
+		private StackTraceElement[] stackTrace;
+
+		SlowCallback(String target, String thread, long micros,
+				StackTraceElement[] stackTrace) {
+			this.target = target;
+			this.thread = thread;
+			this.micros = micros;
+			this.stackTrace = stackTrace;
+		}
+
+		/** @return class name of the {@link Connection} or the event */
+		public String getTarget() {
+			return target;
+		}
+
+		/** @return name of the loop thread */
+		public String getThread() {
+			return thread;
+		}
+
+		public long getMicros() {
+			return micros;
+		}
+
+		/** @return the stack sampled while running, or <code>null</code> if not sampled */
+		public StackTraceElement[] getStackTrace() {
+			return stackTrace;
+		}
+
+		@Override
+		public String toString() {
+			return target + " took " + micros / 1000 + " ms in " + thread;
+		}
+	}
+
+	/** The state of one loop, which is written by the loop and read by the watchdog */
+	class Probe {
+		Thread thread;
+		volatile Object target = null;
+		volatile long start = 0;
+		/** The "start" of the callback which "stack" belongs to */
+		volatile long sampledStart = 0;
+		volatile StackTraceElement[] stack = null;
+		/** Callbacks nested in a callback are measured as part of it */
+		private int depth = 0;
+
+		void begin(Object target_) {
+			if (depth ++ > 0) {
+				return;
+			}
+			start = System.nanoTime();
+			target = target_;
+		}
+
+		void end() {
+			if (-- depth > 0) {
+				return;
+			}
+			long micros = (System.nanoTime() - start) / 1000;
+			Object target_ = target;
+			target = null;
+			callbackTimes.record(micros);
+			if (micros < slowMicros) {
+				return;
+			}
+			slowCallbacks.incrementAndGet();
+			StackTraceElement[] stackTrace = sampledStart == start ? stack : null;
+			reporter.accept(new SlowCallback(target_.getClass().getName(),
+					Thread.currentThread().getName(), micros, stackTrace));
+		}
+
+		void recordPass(long startNanos) {
+			passTimes.record((System.nanoTime() - startNanos) / 1000);
+		}
+
+		void recordQueue(long startNanos) {
+			queueTimes.record((System.nanoTime() - startNanos) / 1000);
+		}
+
+		void run(Runnable runnable) {
+			begin(runnable);
+			try {
+				runnable.run();
+			} finally {
+				end();
+			}
+		}
+	}
+
+	private static Logger logger = Logger.getLogger(LoopMonitor.class.getName());
+
+	private long slowMicros;
+	private Consumer<SlowCallback> reporter;
+	private Histogram passTimes = new Histogram();
+	private Histogram queueTimes = new Histogram();
+	private Histogram callbackTimes = new Histogram();
+	private AtomicLong slowCallbacks = new AtomicLong(0);
+	private CopyOnWriteArrayList<Probe> probes = new CopyOnWriteArrayList<>();
+	private Thread watchdog = null;
+	private volatile boolean closed = false;
+
+	/** Creates a monitor which logs slow callbacks with {@link Logger} */
+	public LoopMonitor(long slowMillis) {
+		this(slowMillis, callback -> {
+			Throwable t = new Throwable("Stack Sample");
+			StackTraceElement[] stackTrace = callback.getStackTrace();
+			t.setStackTrace(stackTrace == null ? new StackTraceElement[0] : stackTrace);
+			logger.log(Level.WARNING, "Slow Callback: " + callback, t);
+		});
+	}
+
+	/**
+	 * @param slowMillis - The threshold of slow callbacks, in milliseconds.
+	 * @param reporter - Accepts slow callbacks, and is called in the loop.
+	 */
+	public LoopMonitor(long slowMillis, Consumer<SlowCallback> reporter) {
+		slowMicros = slowMillis * 1000;
+		this.reporter = reporter;
+	}
+
+	synchronized Probe attach() {
+		Probe probe = new Probe();
+		probes.add(probe);
+		if (watchdog == null && !closed) {
+			watchdog = new Thread(this::watch, "LoopMonitor-watchdog");
+			watchdog.setDaemon(true);
+			watchdog.start();
+		}
+		return probe;
+	}
+
+	void detach(Probe probe) {
+		probes.remove(probe);
+	}
+
+	/** Samples stacks of callbacks running longer than the threshold */
+	private void watch() {
+		long interval = Math.max(slowMicros / 2000, 1);
+		while (!closed) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			long now = System.nanoTime();
+			for (Probe probe : probes) {
+				long start = probe.start;
+				if (probe.target == null || probe.sampledStart == start ||
+						(now - start) / 1000 < slowMicros) {
+					continue;
+				}
+				Thread thread = probe.thread;
+				if (thread != null) {
+					probe.stack = thread.getStackTrace();
+					probe.sampledStart = start;
+				}
+			}
+		}
+	}
+
+	/** @return time of selector passes, from <code>select()</code> returning to the end */
+	public Histogram getPassTimes() {
+		return passTimes;
+	}
+
+	/** @return time of running all queued events and expired timers in a pass */
+	public Histogram getQueueTimes() {
+		return queueTimes;
+	}
+
+	/** @return time of each callback */
+	public Histogram getCallbackTimes() {
+		return callbackTimes;
+	}
+
+	/** @return number of callbacks running longer than the threshold */
+	public long getSlowCallbacks() {
+		return slowCallbacks.get();
+	}
+
+	/** Stops the watchdog thread */
+	@Override
+	public void close() {
+		closed = true;
+		Thread watchdog_;
+		synchronized (this) {
+			watchdog_ = watchdog;
+		}
+		if (watchdog_ != null) {
+			watchdog_.interrupt();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.xqbase.tuna;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An unbounded lock-free queue for multiple producers and a single consumer,
+ * which links arrays of 1024 elements rather than allocating a node per element.<p>
+ *
+ * A producer claims a slot by incrementing the counter of the tail array,
+ * and the consumer reads slots in order, so an element claimed but not yet stored
+ * hides the elements after it until it is stored.
+ */
+class MpscQueue<E> {
+	private static final int SIZE = 1024;
+
+	private static class Chunk<E> {
+		AtomicReferenceArray<E> slots = new AtomicReferenceArray<>(SIZE);
+		AtomicInteger claimed = new AtomicInteger(0);
+		AtomicReference<Chunk<E>> next = new AtomicReference<>(null);
+	}
+
+	private AtomicReference<Chunk<E>> tail = new AtomicReference<>();
+	/** Accessed by the consumer only */
+	private Chunk<E> head;
+	private int index = 0;
+
+	MpscQueue() {
+		head = new Chunk<>();
+		tail.set(head);
+	}
+
+	/** Called by any thread */
+	void offer(E e) {
+		while (true) {
+			Chunk<E> chunk = tail.get();
+			int i = chunk.claimed.getAndIncrement();
+			if (i < SIZE) {
+				chunk.slots.set(i, e);
+				return;
+			}
+			// The tail is full, so append a new chunk or help others to append
+			Chunk<E> next = chunk.next.get();
+			if (next == null) {
+				Chunk<E> newChunk = new Chunk<>();
+				next = chunk.next.compareAndSet(null, newChunk) ? newChunk : chunk.next.get();
+			}
+			tail.compareAndSet(chunk, next);
+		}
+	}
+
+	/** Called by the consumer only */
+	E poll() {
+		if (index == SIZE) {
+			Chunk<E> next = head.next.get();
+			if (next == null) {
+				return null;
+			}
+			head = next;
+			index = 0;
+		}
+		E e = head.slots.get(index);
+		if (e != null) {
+			head.slots.lazySet(index, null);
+			index ++;
+		}
+		return e;
+	}
+
+	/** Called by the consumer only */
+	boolean isEmpty() {
+		if (index == SIZE) {
+			Chunk<E> next = head.next.get();
+			return next == null || next.slots.get(0) == null;
+		}
+		return head.slots.get(index) == null;
+	}
+}
\ No newline at end of file
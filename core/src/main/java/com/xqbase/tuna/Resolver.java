@@ -0,0 +1,34 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/** Resolves host names for {@link Connector#connect(Connection, String, int)} */
+@FunctionalInterface
+public interface Resolver {
+	public static final InetAddress[] NO_ADDRESSES = {};
+
+	/**
+	 * Resolves a host name without blocking.
+	 *
+	 * @param callback - Accepts the addresses of the <code>host</code>,
+	 *			or {@link #NO_ADDRESSES} if the <code>host</code> could not be resolved.
+	 *			May be called in any thread.
+	 */
+	public void resolve(String host, Consumer<InetAddress[]> callback);
+
+	/** @return a {@link Resolver} calling {@link InetAddress#getAllByName(String)} in <code>executor</code> */
+	public static Resolver system(Executor executor) {
+		return (host, callback) -> executor.execute(() -> {
+			InetAddress[] addrs;
+			try {
+				addrs = InetAddress.getAllByName(host);
+			} catch (IOException e) {
+				addrs = NO_ADDRESSES;
+			}
+			callback.accept(addrs);
+		});
+	}
+}
\ No newline at end of file
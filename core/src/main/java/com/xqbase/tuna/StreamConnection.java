@@ -0,0 +1,340 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.xqbase.tuna.util.ByteArrayQueue;
+
+/**
+ * A {@link Connection} which runs a blocking-style {@link Handler} in its own thread,
+ * a virtual thread on Java 21 or later, with stream (and channel) views
+ * backed by the loop.<p>
+ *
+ * Received data are buffered up to {@link Connection#MAX_BUFFER_SIZE} bytes,
+ * beyond which the loop stops reading by {@link ConnectionHandler#setBufferSize(int)}.
+ * Writing blocks while the data not yet sent, as read from {@link ConnectionStats}
+ * after each flush and reported by {@link #onQueue(int)} with watermarks,
+ * exceed {@link Connection#MAX_BUFFER_SIZE} bytes.<p>
+ *
+ * The streams are <b>thread-safe</b>, and block with {@link ReentrantLock}s
+ * rather than monitors, which would pin virtual threads.
+ */
+public class StreamConnection implements Connection {
+	/** Runs in the thread of a connection, which is closed after returning */
+	@FunctionalInterface
+	public static interface Handler {
+		public void handle(StreamConnection connection) throws IOException;
+	}
+
+	private static Executor defaultExecutor = null;
+
+	/** @see ConnectorImpl#newExecutor() */
+	private static synchronized Executor getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			defaultExecutor = ConnectorImpl.newExecutor();
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * @param eventQueue - The loop which the connections are registered in.
+	 *			In multi-reactor mode, use {@link ConnectorImpl#add(java.util.function.Function,
+	 *			java.net.InetSocketAddress)} to create a {@link ServerConnection} for each loop.
+	 * @return a {@link ServerConnection} running <code>handler</code>
+	 *			for each connection in the default executor
+	 */
+	public static ServerConnection serverConnection(EventQueue eventQueue, Handler handler) {
+		return () -> new StreamConnection(eventQueue, handler);
+	}
+
+	private EventQueue eventQueue;
+	private Executor executor;
+	private Handler handler;
+	private ConnectionHandler connectionHandler;
+	private ConnectionSession session = null;
+
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition readable = lock.newCondition();
+	private Condition writable = lock.newCondition();
+	private ByteArrayQueue recvBuffer = new ByteArrayQueue(), sendBuffer = new ByteArrayQueue();
+	/** Bytes queued in the network end, by {@link #flush()} and {@link #onQueue(int)} */
+	private int queued = 0;
+	private boolean paused = false, flushing = false;
+	private boolean disconnected = false, closed = false;
+
+	private InputStream in = new InputStream() {
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return recv(b, off, len);
+		}
+
+		@Override
+		public int available() {
+			lock.lock();
+			try {
+				return recvBuffer.length();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void close() {
+			StreamConnection.this.close();
+		}
+	};
+
+	private OutputStream out = new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			StreamConnection.this.send(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			StreamConnection.this.close();
+		}
+	};
+
+	/**
+	 * Creates a connection running <code>handler</code> in the default executor
+	 *
+	 * @param eventQueue - The loop which this connection is registered in.
+	 */
+	public StreamConnection(EventQueue eventQueue, Handler handler) {
+		this(eventQueue, getDefaultExecutor(), handler);
+	}
+
+	/**
+	 * Creates a connection running <code>handler</code> in <code>executor</code>
+	 *
+	 * @param eventQueue - The loop which this connection is registered in.
+	 */
+	public StreamConnection(EventQueue eventQueue, Executor executor, Handler handler) {
+		this.eventQueue = eventQueue;
+		this.executor = executor;
+		this.handler = handler;
+	}
+
+	private int recv(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		lock.lock();
+		try {
+			while (recvBuffer.length() == 0) {
+				if (disconnected || closed) {
+					return -1;
+				}
+				readable.await();
+			}
+			int n = Math.min(len, recvBuffer.length());
+			recvBuffer.remove(b, off, n);
+			if (paused && recvBuffer.length() <= MAX_BUFFER_SIZE / 2) {
+				paused = false;
+				eventQueue.invokeLater(this::resume);
+			}
+			return n;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void send(byte[] b, int off, int len) throws IOException {
+		int off_ = off;
+		int end = off + len;
+		lock.lock();
+		try {
+			while (off_ < end) {
+				int space = MAX_BUFFER_SIZE - queued - sendBuffer.length();
+				if (disconnected || closed) {
+					throw new IOException("Connection closed");
+				}
+				if (space <= 0) {
+					writable.await();
+					continue;
+				}
+				int n = Math.min(space, end - off_);
+				sendBuffer.add(b, off_, n);
+				off_ += n;
+				if (!flushing) {
+					flushing = true;
+					eventQueue.invokeLater(this::flush);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Called in the loop */
+	private void flush() {
+		lock.lock();
+		try {
+			flushing = false;
+			if (!disconnected && sendBuffer.length() > 0) {
+				// "onQueue()" may be called back in the same thread
+				connectionHandler.send(sendBuffer.array(),
+						sendBuffer.offset(), sendBuffer.length());
+				// "onQueue()" is not raised below the high watermark
+				queued = (int) Math.min(connectionHandler.
+						getStats().getQueuedBytes(), Integer.MAX_VALUE);
+			}
+			sendBuffer.clear();
+			writable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Called in the loop */
+	private void resume() {
+		lock.lock();
+		try {
+			if (!paused && !disconnected) {
+				connectionHandler.setBufferSize(MAX_BUFFER_SIZE);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** @return the stream to read received data, which returns -1 after disconnected */
+	public InputStream getInputStream() {
+		return in;
+	}
+
+	/** @return the stream to send data, which blocks while too many bytes queued */
+	public OutputStream getOutputStream() {
+		return out;
+	}
+
+	/** @see #getInputStream() */
+	public ReadableByteChannel getReadableChannel() {
+		return Channels.newChannel(in);
+	}
+
+	/** @see #getOutputStream() */
+	public WritableByteChannel getWritableChannel() {
+		return Channels.newChannel(out);
+	}
+
+	/** @return Local/Remote Address/Port */
+	public ConnectionSession getSession() {
+		return session;
+	}
+
+	/** Disconnects after data written are sent. Can be called more than once. */
+	public void close() {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			readable.signalAll();
+			writable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		// Run after the pending flush
+		eventQueue.invokeLater(() -> {
+			lock.lock();
+			try {
+				if (disconnected) {
+					return;
+				}
+				disconnected = true;
+			} finally {
+				lock.unlock();
+			}
+			connectionHandler.disconnect();
+		});
+	}
+
+	@Override
+	public void setHandler(ConnectionHandler handler) {
+		connectionHandler = handler;
+	}
+
+	@Override
+	public void onRecv(byte[] b, int off, int len) {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			recvBuffer.add(b, off, len);
+			if (!paused && recvBuffer.length() >= MAX_BUFFER_SIZE) {
+				paused = true;
+				connectionHandler.setBufferSize(0);
+			}
+			readable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void onQueue(int size) {
+		lock.lock();
+		try {
+			queued = size;
+			writable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void onConnect(ConnectionSession session_) {
+		session = session_;
+		// Queued bytes are raised when blocking and after half drained
+		connectionHandler.setWatermarks(MAX_BUFFER_SIZE / 2, MAX_BUFFER_SIZE);
+		executor.execute(() -> {
+			try {
+				handler.handle(this);
+			} catch (IOException e) {
+				// Disconnected or failed, so just close
+			} finally {
+				close();
+			}
+		});
+	}
+
+	@Override
+	public void onDisconnect() {
+		lock.lock();
+		try {
+			disconnected = true;
+			readable.signalAll();
+			writable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.xqbase.tuna;
+
+import java.util.Date;
+
+/** A timer scheduled in {@link TimerWheel}, which is also the handle to cancel itself. */
+class Timer implements TimerHandler.Closeable {
+	TimerWheel wheel;
+	Runnable runnable;
+	long uptime;
+	/** 0 for a one-shot timer */
+	long period = 0;
+	/** -1 if not scheduled */
+	int slot = -1;
+	Timer prev, next;
+
+	Timer(TimerWheel wheel, Runnable runnable, long uptime) {
+		this.wheel = wheel;
+		this.runnable = runnable;
+		this.uptime = uptime;
+	}
+
+	@Override
+	public void close() {
+		// may be called in "runnable"
+		period = 0;
+		if (slot >= 0) {
+			wheel.remove(this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new Date(uptime) + (period == 0 ? "" : "/" + period);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,206 @@
+package com.xqbase.tuna;
+
+/**
+ * A hierarchical timing wheel with 1-millisecond ticks and 4 levels of 256 slots,
+ * which schedules and cancels a {@link Timer} in O(1),
+ * expires timers slot by slot and never allocates while ticking.<p>
+ *
+ * A timer is put into level <i>n</i> if it expires within 256<sup><i>n</i> + 1</sup>
+ * milliseconds, and is moved to a lower level when its slot comes round.
+ * Timers beyond 2<sup>32</sup> milliseconds (about 49 days)
+ * are parked in the last level until they come closer.
+ */
+class TimerWheel {
+	private static final int BITS = 8;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private static final long MAX_DELAY = (1L << (BITS * LEVELS)) - 1;
+	/** The slot of expired timers which are being run */
+	private static final int PENDING = LEVELS * SLOTS;
+
+	private Timer[] slots = new Timer[PENDING + 1];
+	private long[] bitmap = new long[LEVELS * SLOTS / 64];
+	/** All timers before "current" have been expired */
+	private long current;
+	private int size = 0;
+	/** Measures timers if not <code>null</code> */
+	LoopMonitor.Probe probe = null;
+
+	TimerWheel(long now) {
+		current = now;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Timer add(Runnable runnable, long uptime, long period) {
+		Timer timer = new Timer(this, runnable, uptime);
+		timer.period = period;
+		add(timer);
+		size ++;
+		return timer;
+	}
+
+	void remove(Timer timer) {
+		unlink(timer);
+		size --;
+	}
+
+	private void add(Timer timer) {
+		long delay = Math.max(0, Math.min(timer.uptime - current, MAX_DELAY));
+		int level = (63 - Long.numberOfLeadingZeros(delay)) / BITS;
+		link(timer, level * SLOTS +
+				(int) (((current + delay) >>> (level * BITS)) & MASK));
+	}
+
+	private void link(Timer timer, int slot) {
+		Timer head = slots[slot];
+		if (head == null) {
+			timer.prev = timer.next = timer;
+			slots[slot] = timer;
+			bitmap[slot >>> 6] |= 1L << slot;
+		} else {
+			// Append to tail to keep the order of scheduling
+			timer.prev = head.prev;
+			timer.next = head;
+			head.prev.next = timer;
+			head.prev = timer;
+		}
+		timer.slot = slot;
+	}
+
+	private void unlink(Timer timer) {
+		int slot = timer.slot;
+		if (timer.next == timer) {
+			slots[slot] = null;
+			if (slot < PENDING) {
+				bitmap[slot >>> 6] &= ~(1L << slot);
+			}
+		} else {
+			timer.prev.next = timer.next;
+			timer.next.prev = timer.prev;
+			if (slots[slot] == timer) {
+				slots[slot] = timer.next;
+			}
+		}
+		timer.prev = timer.next = null;
+		timer.slot = -1;
+	}
+
+	/** @return the first non-empty slot not before <code>from</code>, or -1 */
+	private int nextSlot(int level, int from) {
+		int base = level * SLOTS;
+		for (int i = from; i < SLOTS; i = (i | 63) + 1) {
+			int word = (base + i) >>> 6;
+			long bits = bitmap[word] & (-1L << i);
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits) - base;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the earliest time when a timer may expire or a slot needs moving down,
+	 *			or -1 if there are no timers
+	 */
+	long nextTime() {
+		if (size == 0) {
+			return -1;
+		}
+		if (slots[PENDING] != null) {
+			return current;
+		}
+		// A higher level may need moving down before a lower level expires
+		long time = Long.MAX_VALUE;
+		for (int level = 0; level < LEVELS; level ++) {
+			int shift = level * BITS;
+			int index = (int) (current >>> shift) & MASK;
+			long rotation = current & -(1L << (shift + BITS));
+			// Slot "index" of higher levels has been moved down,
+			// unless "current" is just at the beginning of that slot
+			int next = nextSlot(level, level == 0 ||
+					(current & ((1L << shift) - 1)) == 0 ? index : index + 1);
+			if (next >= 0) {
+				time = Math.min(time, rotation + ((long) next << shift));
+			} else if (nextSlot(level, 0) >= 0) {
+				// Only slots of the next rotation
+				time = Math.min(time, rotation + (1L << (shift + BITS)));
+			}
+		}
+		return time == Long.MAX_VALUE ? -1 : time;
+	}
+
+	private void cascade(int level) {
+		int index = (int) (current >>> (level * BITS)) & MASK;
+		if (index == 0 && level < LEVELS - 1) {
+			cascade(level + 1);
+		}
+		int slot = level * SLOTS + index;
+		Timer timer = slots[slot];
+		if (timer == null) {
+			return;
+		}
+		Timer last = timer.prev;
+		slots[slot] = null;
+		bitmap[slot >>> 6] &= ~(1L << slot);
+		while (true) {
+			Timer next = timer.next;
+			add(timer);
+			if (timer == last) {
+				break;
+			}
+			timer = next;
+		}
+	}
+
+	/** Runs all timers which expire at or before <code>now</code> */
+	void expire(long now) {
+		while (true) {
+			long next = nextTime();
+			if (next < 0 || next > now) {
+				if (now >= current) {
+					current = now + 1;
+				}
+				return;
+			}
+			if (next > current) {
+				current = next;
+			}
+			int index = (int) current & MASK;
+			if (index == 0) {
+				cascade(1);
+			}
+			Timer timer = slots[index];
+			if (timer != null) {
+				slots[index] = null;
+				bitmap[index >>> 6] &= ~(1L << index);
+				Timer last = timer.prev;
+				slots[PENDING] = timer;
+				do {
+					timer.slot = PENDING;
+					timer = timer.next;
+				} while (timer != last.next);
+			}
+			// Timers added by "runnable" will expire in later ticks
+			current ++;
+			while ((timer = slots[PENDING]) != null) {
+				unlink(timer);
+				if (timer.period > 0) {
+					timer.uptime += timer.period;
+					add(timer);
+				} else {
+					size --;
+				}
+				// "timer" may be closed in "runnable"
+				if (probe == null) {
+					timer.runnable.run();
+				} else {
+					probe.run(timer.runnable);
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.xqbase.tuna;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unix domain sockets (<code>UnixDomainSocketAddress</code> of Java 16 or later),
+ * accessed by reflection to keep running on Java 8.
+ */
+class UnixDomain {
+	private static Class<?> addressClass = null;
+	private static Method of = null, getPath = null, openSocket = null, openServer = null;
+	private static ProtocolFamily unix = null;
+
+	static {
+		try {
+			Class<?> addressClass_ = Class.forName("java.net.UnixDomainSocketAddress");
+			of = addressClass_.getMethod("of", String.class);
+			getPath = addressClass_.getMethod("getPath");
+			openSocket = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+			openServer = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+			unix = StandardProtocolFamily.valueOf("UNIX");
+			addressClass = addressClass_;
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			// Not supported before Java 16
+		}
+	}
+
+	static boolean isSupported() {
+		return addressClass != null;
+	}
+
+	static boolean isUnix(SocketAddress addr) {
+		return addressClass != null && addressClass.isInstance(addr);
+	}
+
+	private static Object invoke(Method method, Object obj, Object... args) throws IOException {
+		if (addressClass == null) {
+			throw new UnsupportedOperationException("Unix domain sockets need Java 16 or later");
+		}
+		try {
+			return method.invoke(obj, args);
+		} catch (InvocationTargetException e) {
+			Throwable t = e.getCause();
+			if (t instanceof IOException) {
+				throw (IOException) t;
+			}
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new RuntimeException(t);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static SocketAddress of(String path) {
+		try {
+			return (SocketAddress) invoke(of, null, path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static SocketChannel openSocket() throws IOException {
+		return (SocketChannel) invoke(openSocket, null, unix);
+	}
+
+	static ServerSocketChannel openServer() throws IOException {
+		return (ServerSocketChannel) invoke(openServer, null, unix);
+	}
+
+	/** Deletes the file of a listening address, which is not deleted when the channel closes */
+	static void delete(SocketAddress addr) {
+		try {
+			Files.deleteIfExists((Path) invoke(getPath, addr));
+		} catch (IOException e) {/**/}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.xqbase.tuna.dns;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Name servers, search domains, timeout and static hosts of a DNS resolver,
+ * which are read from <code>/etc/resolv.conf</code> and <code>/etc/hosts</code> by default.
+ */
+public class DnsConfig {
+	public static final int DEFAULT_TIMEOUT = 5000;
+	public static final int DEFAULT_ATTEMPTS = 2;
+	public static final int DEFAULT_NDOTS = 1;
+	/** The maximum "ndots" of resolv.conf */
+	private static final int MAX_NDOTS = 15;
+
+	private static DnsConfig defaultConfig = null;
+
+	private List<InetSocketAddress> nameservers;
+	private List<String> search;
+	private int ndots, timeout, attempts;
+	private Map<String, InetAddress[]> hosts;
+
+	/**
+	 * @param nameservers - Name servers to query in turn, or empty to
+	 *			resolve by the system resolver only.
+	 * @param timeout - Timeout of each attempt, in milliseconds.
+	 * @param attempts - Number of attempts before falling back to the system resolver.
+	 * @param hosts - Static addresses of lower-case host names.
+	 */
+	public DnsConfig(List<InetSocketAddress> nameservers, int timeout,
+			int attempts, Map<String, InetAddress[]> hosts) {
+		this(nameservers, Collections.emptyList(), DEFAULT_NDOTS, timeout, attempts, hosts);
+	}
+
+	/**
+	 * @param search - Lower-case domains to append to relative names, in order.
+	 * @param ndots - A relative name with at least this number of dots
+	 *			is tried as an absolute name before the search domains.
+	 * @see #DnsConfig(List, int, int, Map)
+	 */
+	public DnsConfig(List<InetSocketAddress> nameservers, List<String> search, int ndots,
+			int timeout, int attempts, Map<String, InetAddress[]> hosts) {
+		this.nameservers = nameservers;
+		this.search = search;
+		this.ndots = ndots;
+		this.timeout = timeout;
+		this.attempts = Math.max(attempts, 1);
+		this.hosts = hosts;
+	}
+
+	public List<InetSocketAddress> getNameservers() {
+		return nameservers;
+	}
+
+	public List<String> getSearch() {
+		return search;
+	}
+
+	public int getNdots() {
+		return ndots;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public Map<String, InetAddress[]> getHosts() {
+		return hosts;
+	}
+
+	/** @return the configuration read from <code>/etc/resolv.conf</code> and <code>/etc/hosts</code> */
+	public static synchronized DnsConfig getDefault() {
+		if (defaultConfig == null) {
+			defaultConfig = load(new File("/etc/resolv.conf"), new File("/etc/hosts"));
+		}
+		return defaultConfig;
+	}
+
+	/** Reads a configuration, and missing or unreadable files are ignored */
+	public static DnsConfig load(File resolvConf, File hostsFile) {
+		List<InetSocketAddress> nameservers = new ArrayList<>();
+		List<String> search = new ArrayList<>();
+		int ndots = DEFAULT_NDOTS, timeout = DEFAULT_TIMEOUT, attempts = DEFAULT_ATTEMPTS;
+		for (String[] s : readLines(resolvConf)) {
+			if (s.length < 2) {
+				continue;
+			}
+			if (s[0].equals("nameserver")) {
+				InetAddress addr = parseAddress(s[1]);
+				if (addr != null) {
+					nameservers.add(new InetSocketAddress(addr, 53));
+				}
+			} else if (s[0].equals("search") || s[0].equals("domain")) {
+				// The last "search" or "domain" wins
+				search.clear();
+				for (int i = 1; i < (s[0].equals("domain") ? 2 : s.length); i ++) {
+					String domain = s[i].toLowerCase(Locale.ROOT);
+					if (domain.endsWith(".")) {
+						domain = domain.substring(0, domain.length() - 1);
+					}
+					if (!domain.isEmpty()) {
+						search.add(domain);
+					}
+				}
+			} else if (s[0].equals("options")) {
+				for (int i = 1; i < s.length; i ++) {
+					if (s[i].startsWith("ndots:")) {
+						ndots = Math.min(Math.max(parseInt(s[i].substring(6), ndots), 0),
+								MAX_NDOTS);
+					} else if (s[i].startsWith("timeout:")) {
+						timeout = parseInt(s[i].substring(8), timeout / 1000) * 1000;
+					} else if (s[i].startsWith("attempts:")) {
+						attempts = parseInt(s[i].substring(9), attempts);
+					}
+				}
+			}
+		}
+		HashMap<String, List<InetAddress>> hostsMap = new HashMap<>();
+		for (String[] s : readLines(hostsFile)) {
+			InetAddress addr = s.length < 2 ? null : parseAddress(s[0]);
+			if (addr == null) {
+				continue;
+			}
+			for (int i = 1; i < s.length; i ++) {
+				hostsMap.computeIfAbsent(s[i].toLowerCase(Locale.ROOT),
+						k -> new ArrayList<>()).add(addr);
+			}
+		}
+		HashMap<String, InetAddress[]> hosts = new HashMap<>();
+		hostsMap.forEach((host, addrs) -> hosts.put(host, addrs.toArray(new InetAddress[0])));
+		return new DnsConfig(Collections.unmodifiableList(nameservers),
+				Collections.unmodifiableList(search), ndots, timeout,
+				attempts, Collections.unmodifiableMap(hosts));
+	}
+
+	private static List<String[]> readLines(File file) {
+		List<String[]> lines = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new
+				FileInputStream(file), StandardCharsets.ISO_8859_1))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (!line.isEmpty() && line.charAt(0) != ';') {
+					lines.add(line.split("\\s+"));
+				}
+			}
+		} catch (IOException e) {/**/}
+		return lines;
+	}
+
+	/** @return the address of an IP literal, or <code>null</code> */
+	private static InetAddress parseAddress(String s) {
+		if (s.indexOf(':') < 0 && !s.matches("[0-9.]+")) {
+			return null;
+		}
+		try {
+			return InetAddress.getByName(s);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static int parseInt(String s, int i) {
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			return i;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,269 @@
+package com.xqbase.tuna.dns;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import com.xqbase.tuna.packet.PacketException;
+import com.xqbase.tuna.util.Bytes;
+
+/**
+ * A DNS message (RFC 1035), which encodes queries and
+ * decodes responses of A and AAAA records.
+ */
+public class DnsPacket {
+	public static final int TYPE_A = 1;
+	public static final int TYPE_CNAME = 5;
+	public static final int TYPE_SOA = 6;
+	public static final int TYPE_AAAA = 28;
+	public static final int CLASS_IN = 1;
+
+	public static final int RCODE_NOERROR = 0;
+	public static final int RCODE_SERVFAIL = 2;
+	public static final int RCODE_NXDOMAIN = 3;
+
+	private static final int HEADER_SIZE = 12;
+	private static final int FLAG_RESPONSE = 0x8000;
+	private static final int FLAG_TRUNCATED = 0x0200;
+	private static final int FLAG_RECURSION_DESIRED = 0x0100;
+	private static final int MAX_CNAMES = 8;
+
+	private static class Record {
+		String name;
+		int type, ttl;
+		/** The canonical name of CNAME, or the address of A or AAAA */
+		Object data;
+	}
+
+	private int id, rcode, type;
+	private boolean truncated;
+	private String name;
+	private List<InetAddress> addresses = new ArrayList<>();
+	private int ttl = Integer.MAX_VALUE, negativeTtl = -1;
+
+	/**
+	 * Encodes a recursive query of one question
+	 *
+	 * @throws IllegalArgumentException if <code>name</code> is not a valid ASCII domain name
+	 */
+	public static byte[] query(int id, String name, int type) {
+		if (name.isEmpty() || name.length() > 253) {
+			throw new IllegalArgumentException("Invalid Domain Name: " + name);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + name.length() + 6);
+		byte[] header = new byte[HEADER_SIZE];
+		Bytes.setShort(id, header, 0);
+		Bytes.setShort(FLAG_RECURSION_DESIRED, header, 2);
+		Bytes.setShort(1, header, 4);
+		out.write(header, 0, HEADER_SIZE);
+		for (String label : name.split("\\.", -1)) {
+			int len = label.length();
+			if (len == 0 || len > 63) {
+				throw new IllegalArgumentException("Invalid Domain Name: " + name);
+			}
+			out.write(len);
+			for (int i = 0; i < len; i ++) {
+				char c = label.charAt(i);
+				if (c <= ' ' || c >= 0x7f) {
+					throw new IllegalArgumentException("Invalid Domain Name: " + name);
+				}
+				out.write(c);
+			}
+		}
+		out.write(0);
+		out.write(Bytes.fromShort(type), 0, 2);
+		out.write(Bytes.fromShort(CLASS_IN), 0, 2);
+		return out.toByteArray();
+	}
+
+	/** @throws PacketException if <code>b</code> is not a valid DNS response */
+	public static DnsPacket parse(byte[] b, int off, int len) throws PacketException {
+		if (len < HEADER_SIZE) {
+			throw new PacketException("Malformed DNS Packet");
+		}
+		DnsPacket packet = new DnsPacket();
+		packet.id = Bytes.toShort(b, off);
+		int flags = Bytes.toShort(b, off + 2);
+		if ((flags & FLAG_RESPONSE) == 0) {
+			throw new PacketException("Not a DNS Response");
+		}
+		packet.truncated = (flags & FLAG_TRUNCATED) != 0;
+		packet.rcode = flags & 0xf;
+		int qdCount = Bytes.toShort(b, off + 4);
+		int anCount = Bytes.toShort(b, off + 6);
+		int nsCount = Bytes.toShort(b, off + 8);
+		if (qdCount != 1) {
+			throw new PacketException("Malformed DNS Packet");
+		}
+		int end = off + len;
+		int[] pos = {off + HEADER_SIZE};
+		packet.name = readName(b, off, end, pos);
+		if (pos[0] + 4 > end) {
+			throw new PacketException("Malformed DNS Packet");
+		}
+		packet.type = Bytes.toShort(b, pos[0]);
+		pos[0] += 4;
+		if (packet.truncated) {
+			return packet;
+		}
+
+		List<Record> answers = new ArrayList<>();
+		for (int i = 0; i < anCount + nsCount; i ++) {
+			Record record = new Record();
+			record.name = readName(b, off, end, pos);
+			if (pos[0] + 10 > end) {
+				throw new PacketException("Malformed DNS Packet");
+			}
+			record.type = Bytes.toShort(b, pos[0]);
+			int class_ = Bytes.toShort(b, pos[0] + 2);
+			record.ttl = Math.max(Bytes.toInt(b, pos[0] + 4), 0);
+			int rdLength = Bytes.toShort(b, pos[0] + 8);
+			pos[0] += 10;
+			int rdEnd = pos[0] + rdLength;
+			if (rdEnd > end) {
+				throw new PacketException("Malformed DNS Packet");
+			}
+			if (class_ != CLASS_IN) {
+				pos[0] = rdEnd;
+				continue;
+			}
+			if (i >= anCount) {
+				// Authority section: the SOA minimum is the negative TTL (RFC 2308)
+				if (record.type == TYPE_SOA) {
+					readName(b, off, end, pos);
+					readName(b, off, end, pos);
+					if (pos[0] + 20 > rdEnd) {
+						throw new PacketException("Malformed DNS Packet");
+					}
+					int minimum = Math.max(Bytes.toInt(b, pos[0] + 16), 0);
+					packet.negativeTtl = Math.min(record.ttl, minimum);
+				}
+			} else if (record.type == TYPE_CNAME) {
+				record.data = readName(b, off, end, pos);
+				answers.add(record);
+			} else if ((record.type == TYPE_A && rdLength == 4) ||
+					(record.type == TYPE_AAAA && rdLength == 16)) {
+				byte[] addr = new byte[rdLength];
+				System.arraycopy(b, pos[0], addr, 0, rdLength);
+				try {
+					record.data = InetAddress.getByAddress(addr);
+				} catch (UnknownHostException e) {
+					throw new PacketException(e.getMessage());
+				}
+				answers.add(record);
+			}
+			pos[0] = rdEnd;
+		}
+
+		// Follow the CNAME chain from the question, ignoring unrelated records
+		HashSet<String> aliases = new HashSet<>();
+		aliases.add(packet.name);
+		for (int i = 0; i < MAX_CNAMES; i ++) {
+			boolean added = false;
+			for (Record record : answers) {
+				if (record.type == TYPE_CNAME && aliases.contains(record.name) &&
+						aliases.add((String) record.data)) {
+					packet.ttl = Math.min(packet.ttl, record.ttl);
+					added = true;
+				}
+			}
+			if (!added) {
+				break;
+			}
+		}
+		for (Record record : answers) {
+			if (record.type == packet.type && aliases.contains(record.name)) {
+				packet.addresses.add((InetAddress) record.data);
+				packet.ttl = Math.min(packet.ttl, record.ttl);
+			}
+		}
+		if (packet.addresses.isEmpty()) {
+			packet.ttl = 0;
+		}
+		return packet;
+	}
+
+	/** Reads a name with compression pointers, in lower case without the trailing dot */
+	private static String readName(byte[] b, int off, int end,
+			int[] pos) throws PacketException {
+		StringBuilder sb = new StringBuilder();
+		int p = pos[0];
+		int jumps = 0;
+		while (true) {
+			if (p >= end) {
+				throw new PacketException("Malformed DNS Packet");
+			}
+			int len = b[p] & 0xff;
+			if (len == 0) {
+				p ++;
+				break;
+			}
+			if ((len & 0xc0) == 0xc0) {
+				if (p + 1 >= end || jumps ++ > 127) {
+					throw new PacketException("Malformed DNS Packet");
+				}
+				if (jumps == 1) {
+					pos[0] = p + 2;
+				}
+				p = off + (((len & 0x3f) << 8) | (b[p + 1] & 0xff));
+				continue;
+			}
+			if ((len & 0xc0) != 0 || p + 1 + len > end) {
+				throw new PacketException("Malformed DNS Packet");
+			}
+			if (sb.length() > 0) {
+				sb.append('.');
+			}
+			for (int i = p + 1; i <= p + len; i ++) {
+				sb.append(Character.toLowerCase((char) (b[i] & 0xff)));
+			}
+			p += 1 + len;
+		}
+		if (jumps == 0) {
+			pos[0] = p;
+		}
+		return sb.toString();
+	}
+
+	private DnsPacket() {/**/}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getRcode() {
+		return rcode;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/** @return the question name, in lower case */
+	public String getName() {
+		return name;
+	}
+
+	/** @return the question type */
+	public int getType() {
+		return type;
+	}
+
+	/** @return addresses of the question type, following CNAMEs */
+	public List<InetAddress> getAddresses() {
+		return addresses;
+	}
+
+	/** @return the minimum TTL of {@link #getAddresses()} and CNAMEs, in seconds */
+	public int getTtl() {
+		return ttl;
+	}
+
+	/** @return the negative TTL from SOA in the authority section, in seconds, or -1 if absent */
+	public int getNegativeTtl() {
+		return negativeTtl;
+	}
+}
\ No newline at end of file
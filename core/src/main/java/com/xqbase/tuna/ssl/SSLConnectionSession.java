@@ -1,6 +1,7 @@
 package com.xqbase.tuna.ssl;
 
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 import javax.net.ssl.SSLSession;
 
@@ -15,6 +16,12 @@ public class SSLConnectionSession extends ConnectionSession {
 		this.sslSession = sslSession;
 	}
 
+	public SSLConnectionSession(SocketAddress localAddress,
+			SocketAddress remoteAddress, SSLSession sslSession) {
+		super(localAddress, remoteAddress);
+		this.sslSession = sslSession;
+	}
+
 	public SSLSession getSSLSession() {
 		return sslSession;
 	}
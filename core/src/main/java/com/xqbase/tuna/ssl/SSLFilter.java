@@ -12,7 +12,9 @@ import javax.net.ssl.SSLEngineResult.Status;
 
 import com.xqbase.tuna.ConnectionFilter;
 import com.xqbase.tuna.ConnectionSession;
+import com.xqbase.tuna.ConnectorImpl;
 import com.xqbase.tuna.EventQueue;
+import com.xqbase.tuna.util.ByteArrayPool;
 import com.xqbase.tuna.util.ByteArrayQueue;
 import com.xqbase.tuna.util.Bytes;
 import com.xqbase.tuna.util.Expirable;
@@ -86,7 +88,9 @@ public class SSLFilter extends ConnectionFilter implements Expirable<SSLFilter>
 
 	/**
 	 * Creates an SSLFilter with the given {@link Executor},
-	 * {@link SSLContext}, mode and advisory peer information
+	 * {@link SSLContext}, mode and advisory peer information.
+	 * Handshake tasks of a {@link ConnectorImpl} run in its executor
+	 * of {@link ConnectorImpl#TASK_TLS}.
 	 *
 	 * @param mode - SSL mode, must be {@link #SERVER_NO_AUTH},
 	 *			{@link #SERVER_WANT_AUTH}, {@link #SERVER_NEED_AUTH} or {@link #CLIENT}.
@@ -97,7 +101,8 @@ public class SSLFilter extends ConnectionFilter implements Expirable<SSLFilter>
 			TimeoutQueue<SSLFilter> ssltq, SSLContext sslc, int mode,
 			String peerHost, int peerPort) {
 		this.eventQueue = eventQueue;
-		this.executor = executor;
+		this.executor = !(executor instanceof ConnectorImpl) ? executor : runnable ->
+				((ConnectorImpl) executor).execute(ConnectorImpl.TASK_TLS, runnable);
 		this.ssltq = ssltq;
 		if (peerHost == null) {
 			ssle = sslc.createSSLEngine();
@@ -273,18 +278,27 @@ public class SSLFilter extends ConnectionFilter implements Expirable<SSLFilter>
 		ByteBuffer srcBB = ByteBuffer.wrap(b, off, len);
 		byte[] outNetBytes = null;
 		SSLEngineResult result;
-		do {
-			int packetBBSize = ssle.getSession().getPacketBufferSize();
-			if (outNetBytes == null || outNetBytes.length < packetBBSize) {
-				outNetBytes = new byte[packetBBSize];
-			}
-			ByteBuffer outNetBB = ByteBuffer.wrap(outNetBytes);
-			result = ssle.wrap(srcBB, outNetBB);
-			if (result.getStatus() != Status.OK) {
-				throw new IOException();
+		try {
+			do {
+				int packetBBSize = ssle.getSession().getPacketBufferSize();
+				if (outNetBytes == null || outNetBytes.length < packetBBSize) {
+					if (outNetBytes != null) {
+						ByteArrayPool.release(outNetBytes);
+					}
+					outNetBytes = ByteArrayPool.borrow(packetBBSize);
+				}
+				ByteBuffer outNetBB = ByteBuffer.wrap(outNetBytes);
+				result = ssle.wrap(srcBB, outNetBB);
+				if (result.getStatus() != Status.OK) {
+					throw new IOException();
+				}
+				super.send(outNetBytes, 0, outNetBB.position());
+			} while (srcBB.remaining() > 0);
+		} finally {
+			if (outNetBytes != null) {
+				ByteArrayPool.release(outNetBytes);
 			}
-			super.send(outNetBytes, 0, outNetBB.position());
-		} while (srcBB.remaining() > 0);
+		}
 		return result;
 	}
 
@@ -358,8 +372,8 @@ public class SSLFilter extends ConnectionFilter implements Expirable<SSLFilter>
 		}
 		// hs == HandshakeStatus.FINISHED
 		removeTimeout();
-		super.onConnect(new SSLConnectionSession(session.getLocalSocketAddress(),
-				session.getRemoteSocketAddress(), ssle.getSession()));
+		super.onConnect(new SSLConnectionSession(session.getLocalAddress(),
+				session.getRemoteAddress(), ssle.getSession()));
 		boolean closed = false;
 		if (baqRecv.length() > 0) {
 			closed = unwrap();
@@ -369,6 +383,7 @@ public class SSLFilter extends ConnectionFilter implements Expirable<SSLFilter>
 			if (wrap(baqToSend.array(), baqToSend.offset(), baqToSend.length())) {
 				closed = true;
 			}
+			baqToSend.clear();
 		}
 		baqToSend = null;
 		disconnectIfClosed(closed);
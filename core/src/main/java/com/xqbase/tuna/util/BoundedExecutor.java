@@ -0,0 +1,100 @@
+package com.xqbase.tuna.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link Executor} which runs at most <code>limit</code> tasks at a time
+ * in an underlying {@link Executor}, and queues the others without blocking.
+ * <b>Thread-safe.</b>
+ */
+public class BoundedExecutor implements Executor {
+	private Executor executor;
+	private volatile int limit;
+	private ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+	private AtomicInteger active = new AtomicInteger(0);
+	private AtomicInteger queued = new AtomicInteger(0);
+	private AtomicInteger maxQueued = new AtomicInteger(0);
+	private LongAdder completed = new LongAdder();
+
+	public BoundedExecutor(Executor executor, int limit) {
+		this.executor = executor;
+		this.limit = limit;
+	}
+
+	@Override
+	public void execute(Runnable runnable) {
+		queue.offer(runnable);
+		int n = queued.incrementAndGet();
+		int max;
+		while (n > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, n)) {/**/}
+		drain();
+	}
+
+	private void drain() {
+		while (!queue.isEmpty()) {
+			int n = active.get();
+			if (n >= limit) {
+				// The last task to finish will drain
+				return;
+			}
+			if (!active.compareAndSet(n, n + 1)) {
+				continue;
+			}
+			Runnable runnable = queue.poll();
+			if (runnable == null) {
+				// Polled by another thread, so check the queue again
+				active.decrementAndGet();
+				continue;
+			}
+			queued.decrementAndGet();
+			try {
+				executor.execute(() -> {
+					try {
+						runnable.run();
+					} finally {
+						active.decrementAndGet();
+						completed.increment();
+						drain();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				active.decrementAndGet();
+				throw e;
+			}
+		}
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/** Changes the limit, which applies to tasks started later */
+	public void setLimit(int limit) {
+		this.limit = limit;
+		drain();
+	}
+
+	/** @return number of tasks running */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/** @return number of tasks waiting for running */
+	public int getQueueSize() {
+		return queued.get();
+	}
+
+	/** @return the maximum number of tasks ever waiting for running */
+	public int getMaxQueueSize() {
+		return maxQueued.get();
+	}
+
+	/** @return number of tasks finished */
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+package com.xqbase.tuna.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A size-classed pool of byte arrays, from 64 bytes to 128 KB in powers of 2.<p>
+ *
+ * Each event loop owns a pool, which serves the thread running the loop
+ * (see {@link #enter()}), so borrowing and releasing need no locks.
+ * Other threads allocate arrays and drop released ones, so arrays released
+ * in an executor never pile up there. A borrowed array may be longer than requested,
+ * and should be released (once) when it is no longer referenced.
+ * Arrays beyond 128 KB are allocated and garbage-collected as usual.<p>
+ *
+ * With the system property <code>com.xqbase.tuna.util.ByteArrayPool.debug=true</code>,
+ * a borrowed array which is garbage-collected without being released
+ * is logged with the stack trace where it was borrowed.<p>
+ *
+ * Arrays held by {@link ByteArrayQueue}s are neither counted as outstanding
+ * nor tracked, because a queue may be dropped without being cleared,
+ * and then its array is just garbage-collected.
+ */
+public class ByteArrayPool {
+	private static final int MIN_BITS = 6;
+	private static final int MAX_BITS = 17;
+	private static final int MAX_POOLED_BYTES = 1 << 20;
+	private static final boolean DEBUG =
+			Boolean.getBoolean(ByteArrayPool.class.getName() + ".debug");
+
+	private static ThreadLocal<ByteArrayPool> current = new ThreadLocal<>();
+	private static LongAdder hits = new LongAdder();
+	private static LongAdder misses = new LongAdder();
+	private static LongAdder outstanding = new LongAdder();
+	private static LongAdder leaks = new LongAdder();
+
+	@SuppressWarnings("unchecked")
+	private ArrayDeque<byte[]>[] classes =
+			(ArrayDeque<byte[]>[]) new ArrayDeque<?>[MAX_BITS - MIN_BITS + 1];
+
+	/** Creates a pool for an event loop */
+	public ByteArrayPool() {
+		for (int i = 0; i < classes.length; i ++) {
+			classes[i] = new ArrayDeque<>();
+		}
+	}
+
+	/**
+	 * Makes this pool serve the current thread until {@link #exit()}.
+	 * A pool must not serve more than one thread at a time.
+	 */
+	public void enter() {
+		current.set(this);
+	}
+
+	/** Stops pooling in the current thread */
+	public static void exit() {
+		current.remove();
+	}
+
+	/** @return the size class of <code>len</code>, or -1 if too large to pool */
+	private static int getClass(int len) {
+		int bits = len <= (1 << MIN_BITS) ? MIN_BITS :
+				32 - Integer.numberOfLeadingZeros(len - 1);
+		return bits > MAX_BITS ? -1 : bits - MIN_BITS;
+	}
+
+	/** @return a byte array whose length is at least <code>len</code> */
+	public static byte[] borrow(int len) {
+		return borrow(len, true);
+	}
+
+	/** Returns a borrowed array to the pool of the current thread, if any. */
+	public static void release(byte[] b) {
+		release(b, true);
+	}
+
+	/** Borrows an array for a {@link ByteArrayQueue}, which need not be released */
+	static byte[] borrowUntracked(int len) {
+		return borrow(len, false);
+	}
+
+	/** Releases an array borrowed by {@link #borrowUntracked(int)} */
+	static void releaseUntracked(byte[] b) {
+		release(b, false);
+	}
+
+	private static byte[] borrow(int len, boolean tracked) {
+		int sizeClass = getClass(len);
+		if (sizeClass < 0) {
+			return new byte[len];
+		}
+		ByteArrayPool pool = current.get();
+		byte[] b = pool == null ? null : pool.classes[sizeClass].poll();
+		if (b == null) {
+			misses.increment();
+			b = new byte[1 << (sizeClass + MIN_BITS)];
+		} else {
+			hits.increment();
+		}
+		if (tracked) {
+			outstanding.increment();
+			if (DEBUG) {
+				Leak.track(b);
+			}
+		}
+		return b;
+	}
+
+	private static void release(byte[] b, boolean tracked) {
+		int sizeClass = getClass(b.length);
+		if (sizeClass < 0 || b.length != 1 << (sizeClass + MIN_BITS)) {
+			return;
+		}
+		if (tracked) {
+			outstanding.decrement();
+			if (DEBUG) {
+				Leak.untrack(b);
+			}
+		}
+		ByteArrayPool pool = current.get();
+		if (pool == null) {
+			return;
+		}
+		ArrayDeque<byte[]> arrays = pool.classes[sizeClass];
+		if (arrays.size() < MAX_POOLED_BYTES >>> (sizeClass + MIN_BITS)) {
+			arrays.push(b);
+		}
+	}
+
+	/** @return number of arrays borrowed from the pool */
+	public static long getHits() {
+		return hits.sum();
+	}
+
+	/** @return number of arrays allocated because the pool was empty */
+	public static long getMisses() {
+		return misses.sum();
+	}
+
+	/** @return number of arrays borrowed but not released yet */
+	public static long getOutstanding() {
+		return outstanding.sum();
+	}
+
+	/** @return number of arrays garbage-collected without being released, in debug mode */
+	public static long getLeaks() {
+		return leaks.sum();
+	}
+
+	private static class Leak extends WeakReference<byte[]> {
+		private static ReferenceQueue<byte[]> queue = new ReferenceQueue<>();
+		private static HashSet<Leak> leakSet = new HashSet<>();
+		private static Logger logger = Logger.getLogger(ByteArrayPool.class.getName());
+
+		private int hash;
+		private Throwable borrowed;
+
+		Leak(byte[] b, ReferenceQueue<byte[]> queue) {
+			super(b, queue);
+			hash = System.identityHashCode(b);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Leak)) {
+				return false;
+			}
+			byte[] b = get();
+			return b != null && b == ((Leak) o).get();
+		}
+
+		static void track(byte[] b) {
+			Leak leak = new Leak(b, queue);
+			leak.borrowed = new Throwable("Borrowed Here");
+			Reference<? extends byte[]> ref;
+			synchronized (leakSet) {
+				while ((ref = queue.poll()) != null) {
+					if (leakSet.remove(ref)) {
+						leaks.increment();
+						outstanding.decrement();
+						logger.log(Level.WARNING, "Byte Array Leaked", ((Leak) ref).borrowed);
+					}
+				}
+				leakSet.add(leak);
+			}
+		}
+
+		static void untrack(byte[] b) {
+			Leak leak = new Leak(b, null);
+			synchronized (leakSet) {
+				leakSet.remove(leak);
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -8,17 +8,24 @@ import java.nio.charset.Charset;
 
 /**
  * A queue of bytes where a sequence of bytes can be
- * added (into the tail) or retrieved (from the head).
+ * added (into the tail) or retrieved (from the head).<p>
+ *
+ * Arrays beyond 1 KB are borrowed from {@link ByteArrayPool},
+ * and released when the queue becomes empty.
+ * A queue which is dropped without being cleared leaves its array to the garbage collector.
  */
 public class ByteArrayQueue implements Cloneable {
 	private byte[] array;
 	private int offset = 0;
 	private int length = 0;
 	private boolean shared = false;
+	private boolean pooled = false;
 
 	/** Creates a ByteArrayQueue that shares this ByteArrayQueue's content. */
 	@Override
 	public ByteArrayQueue clone() {
+		// The array must not be released as long as the clone refers to it
+		pooled = false;
 		return new ByteArrayQueue(array, offset, length);
 	}
 
@@ -30,9 +37,9 @@ public class ByteArrayQueue implements Cloneable {
 		this.shared = true;
 	}
 
-	/** Creates a ByteArrayQueue with the initial capacity of 32 bytes. */
+	/** Creates an empty ByteArrayQueue, which allocates nothing until added. */
 	public ByteArrayQueue() {
-		this(32);
+		array = Bytes.EMPTY_BYTES;
 	}
 
 	/** Creates a ByteArrayQueue with the initial capacity of the given bytes. */
@@ -73,26 +80,40 @@ public class ByteArrayQueue implements Cloneable {
 		length = 0;
 		// Release buffer
 		if (array.length > 1024) {
-			array = new byte[32];
-			shared = false;
+			release();
 		}
 		return this;
 	}
 
-	/** @param capacity - New capacity. */
+	private void release() {
+		if (pooled) {
+			ByteArrayPool.releaseUntracked(array);
+			pooled = false;
+		}
+		array = Bytes.EMPTY_BYTES;
+		shared = false;
+	}
+
+	/** @param capacity - New capacity, which may be rounded up. */
 	public ByteArrayQueue setCapacity(int capacity) {
-		byte[] newArray = new byte[Math.max(capacity, length)];
+		int newCapacity = Math.max(capacity, length);
+		byte[] newArray = newCapacity > 1024 ?
+				ByteArrayPool.borrowUntracked(newCapacity) : new byte[newCapacity];
 		System.arraycopy(array, offset, newArray, 0, length);
+		if (pooled) {
+			ByteArrayPool.releaseUntracked(array);
+		}
 		array = newArray;
 		offset = 0;
 		shared = false;
+		pooled = newCapacity > 1024;
 		return this;
 	}
 
 	private int addLength(int len) {
 		int newLength = length + len;
 		if (shared || newLength > array.length) {
-			setCapacity(Math.max(array.length << 1, newLength));
+			setCapacity(Math.max(Math.max(array.length << 1, newLength), 32));
 		} else if (offset + newLength > array.length) {
 			System.arraycopy(array, offset, array, 0, length);
 			offset = 0;
@@ -128,10 +149,14 @@ public class ByteArrayQueue implements Cloneable {
 
 	/** Reads from an {@link InputStream} */
 	public ByteArrayQueue readFrom(InputStream in) throws IOException {
-		byte[] buffer = new byte[BUFFER_SIZE];
-		int bytesRead;
-		while ((bytesRead = in.read(buffer)) > 0) {
-			add(buffer, 0, bytesRead);
+		byte[] buffer = ByteArrayPool.borrow(BUFFER_SIZE);
+		try {
+			int bytesRead;
+			while ((bytesRead = in.read(buffer)) > 0) {
+				add(buffer, 0, bytesRead);
+			}
+		} finally {
+			ByteArrayPool.release(buffer);
 		}
 		return this;
 	}
@@ -176,9 +201,8 @@ public class ByteArrayQueue implements Cloneable {
 		length -= len;
 		// Release buffer if empty
 		if (length == 0 && array.length > 1024) {
-			array = new byte[32];
+			release();
 			offset = 0;
-			shared = false;
 		}
 		return this;
 	}
@@ -0,0 +1,116 @@
+package com.xqbase.tuna.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear histogram of non-negative values, which records without allocation
+ * and reports percentiles with a relative error below 1/16.<p>
+ *
+ * Values below 16 have their own buckets, and each power of 2 above
+ * is split into 16 buckets. <b>Thread-safe.</b>
+ */
+public class Histogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+	private AtomicLong count = new AtomicLong(0);
+	private AtomicLong sum = new AtomicLong(0);
+	private AtomicLong max = new AtomicLong(0);
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int bits = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (bits - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (bits - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** @return the largest value of a bucket */
+	private static long valueOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long low = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return low + (1L << shift) - 1;
+	}
+
+	/** @param value - Negative values are recorded as 0. */
+	public void record(long value) {
+		long v = Math.max(value, 0);
+		buckets.incrementAndGet(indexOf(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		long m;
+		while (v > (m = max.get()) && !max.compareAndSet(m, v)) {/**/}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * @param percentile - From 0 to 100, e.g. 99.9
+	 * @return the value which <code>percentile</code> percent of values are not above,
+	 *			or 0 if nothing recorded
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i ++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(valueOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/** Adds all values recorded in another histogram */
+	public void add(Histogram histogram) {
+		for (int i = 0; i < buckets.length(); i ++) {
+			long n = histogram.buckets.get(i);
+			if (n > 0) {
+				buckets.addAndGet(i, n);
+			}
+		}
+		count.addAndGet(histogram.count.get());
+		sum.addAndGet(histogram.sum.get());
+		long v = histogram.max.get();
+		long m;
+		while (v > (m = max.get()) && !max.compareAndSet(m, v)) {/**/}
+	}
+
+	/** Clears all recorded values, which may lose values recorded concurrently */
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i ++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + (long) getMean() +
+				", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) +
+				", p999=" + getPercentile(99.9) + ", max=" + getMax();
+	}
+}
\ No newline at end of file
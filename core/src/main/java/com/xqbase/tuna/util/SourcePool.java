@@ -0,0 +1,122 @@
+package com.xqbase.tuna.util;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A pool of local (source) addresses to bind outbound connections to,
+ * so the connections to a hot destination are not limited by the ephemeral ports
+ * of one address. Each destination rotates through the sources,
+ * preferring the source with the fewest connections.<p>
+ *
+ * Connections of each (source, destination) pair are counted
+ * until released. <b>Thread-safe.</b>
+ */
+public class SourcePool {
+	private static class Usage {
+		int[] counts;
+		int next = 0, total = 0;
+
+		Usage(int size) {
+			counts = new int[size];
+		}
+	}
+
+	private InetSocketAddress[] sources;
+	private AtomicIntegerArray totals;
+	private ConcurrentHashMap<String, Usage> usageMap = new ConcurrentHashMap<>();
+
+	/** @param sources - Local addresses of the same family as the destinations */
+	public SourcePool(InetAddress... sources) {
+		if (sources.length == 0) {
+			throw new IllegalArgumentException("No source addresses");
+		}
+		this.sources = new InetSocketAddress[sources.length];
+		for (int i = 0; i < sources.length; i ++) {
+			this.sources[i] = new InetSocketAddress(sources[i], 0);
+		}
+		totals = new AtomicIntegerArray(sources.length);
+	}
+
+	private int indexOf(InetSocketAddress source) {
+		for (int i = 0; i < sources.length; i ++) {
+			if (sources[i].equals(source)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Picks a source for a connection to <code>host:port</code>,
+	 * which must be released after the connection closes.
+	 *
+	 * @return the local address to bind, with port 0
+	 */
+	public InetSocketAddress acquire(String host, int port) {
+		int[] index = {0};
+		usageMap.compute(host + ":" + port, (key, usage) -> {
+			Usage usage_ = usage == null ? new Usage(sources.length) : usage;
+			int best = usage_.next;
+			for (int i = 1; i < sources.length; i ++) {
+				int j = (usage_.next + i) % sources.length;
+				if (totals.get(j) < totals.get(best)) {
+					best = j;
+				}
+			}
+			usage_.next = (best + 1) % sources.length;
+			usage_.counts[best] ++;
+			usage_.total ++;
+			index[0] = best;
+			return usage_;
+		});
+		totals.incrementAndGet(index[0]);
+		return sources[index[0]];
+	}
+
+	/** Releases a source acquired by {@link #acquire(String, int)} */
+	public void release(InetSocketAddress source, String host, int port) {
+		int i = indexOf(source);
+		if (i < 0) {
+			return;
+		}
+		totals.decrementAndGet(i);
+		// Remove the destination when no connections left
+		usageMap.computeIfPresent(host + ":" + port, (key, usage) -> {
+			usage.counts[i] --;
+			usage.total --;
+			return usage.total == 0 ? null : usage;
+		});
+	}
+
+	/** @return connections of each "source => host:port" pair */
+	public Map<String, Integer> getUsage() {
+		Map<String, Integer> map = new TreeMap<>();
+		for (String key : usageMap.keySet()) {
+			// Read under the lock of "compute"
+			usageMap.computeIfPresent(key, (key_, usage) -> {
+				for (int i = 0; i < sources.length; i ++) {
+					if (usage.counts[i] > 0) {
+						map.put(sources[i].getAddress().getHostAddress() +
+								" => " + key_, Integer.valueOf(usage.counts[i]));
+					}
+				}
+				return usage;
+			});
+		}
+		return map;
+	}
+
+	/** @return connections of each source */
+	public Map<String, Integer> getTotals() {
+		Map<String, Integer> map = new TreeMap<>();
+		for (int i = 0; i < sources.length; i ++) {
+			map.put(sources[i].getAddress().getHostAddress(), Integer.valueOf(totals.get(i)));
+		}
+		return map;
+	}
+}
\ No newline at end of file
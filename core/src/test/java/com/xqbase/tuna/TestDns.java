@@ -0,0 +1,129 @@
+package com.xqbase.tuna;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xqbase.tuna.dns.DnsConfig;
+import com.xqbase.tuna.util.Bytes;
+
+public class TestDns {
+	static AtomicInteger queries = new AtomicInteger(0);
+
+	/**
+	 * Answers "*.a.test" with 127.0.0.1, A of "*.v4.test" with 127.0.0.1 and its AAAA
+	 * with NXDOMAIN, others with NXDOMAIN, and ignores "*.slow.test"
+	 */
+	static void serve(DatagramSocket socket) throws Exception {
+		byte[] b = new byte[512];
+		while (true) {
+			DatagramPacket packet = new DatagramPacket(b, b.length);
+			socket.receive(packet);
+			queries.incrementAndGet();
+			int len = packet.getLength();
+			int type = Bytes.toShort(b, len - 4);
+			String name = new String(b, 13, len - 18, "ISO-8859-1");
+			if (name.endsWith("slow\4test")) {
+				continue;
+			}
+			byte[] resp = new byte[len + 64];
+			System.arraycopy(b, 0, resp, 0, len);
+			int pos = len;
+			boolean v4 = name.endsWith("v4\4test");
+			if (!name.endsWith("a\4test") && !(v4 && type == 1)) {
+				Bytes.setShort(0x8183, resp, 2);
+				// SOA with minimum 10 seconds in the authority section
+				Bytes.setShort(1, resp, 8);
+				byte[] soa = {(byte) 0xc0, 12, 0, 6, 0, 1, 0, 0, 0, 60, 0, 22,
+						0, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 10};
+				System.arraycopy(soa, 0, resp, pos, soa.length);
+				pos += soa.length;
+			} else if (type == 1) {
+				Bytes.setShort(0x8180, resp, 2);
+				Bytes.setShort(1, resp, 6);
+				byte[] a = {(byte) 0xc0, 12, 0, 1, 0, 1, 0, 0, 0, 60, 0, 4, 127, 0, 0, 1};
+				System.arraycopy(a, 0, resp, pos, a.length);
+				pos += a.length;
+			} else {
+				Bytes.setShort(0x8180, resp, 2);
+			}
+			socket.send(new DatagramPacket(resp, pos, packet.getSocketAddress()));
+		}
+	}
+
+	static void resolve(ConnectorImpl connector, String host) {
+		resolve(connector.getResolver(), host);
+	}
+
+	static void resolve(Resolver resolver, String host) {
+		long t = System.currentTimeMillis();
+		resolver.resolve(host, addrs ->
+				System.out.println(host + " -> " + Arrays.toString(addrs) +
+				" in " + (System.currentTimeMillis() - t) + " ms"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		Thread thread = new Thread(() -> {
+			try {
+				serve(socket);
+			} catch (Exception e) {/**/}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		try (ConnectorImpl connector = new ConnectorImpl()) {
+			DnsConfig config = new DnsConfig(Collections.singletonList((InetSocketAddress)
+					socket.getLocalSocketAddress()), 500, 2, Collections.emptyMap());
+			DnsResolver resolver = new DnsResolver(connector, config);
+			connector.setResolver(resolver);
+			// Coalesced
+			resolve(connector, "www.a.test");
+			resolve(connector, "WWW.A.TEST.");
+			resolve(connector, "www.nx.test");
+			resolve(connector, "www.slow.test");
+			// NXDOMAIN of AAAA after A
+			resolve(connector, "www.v4.test");
+			long t = System.currentTimeMillis() + 2000;
+			while (System.currentTimeMillis() < t) {
+				connector.doEvents(100);
+			}
+			// Cached
+			resolve(connector, "www.a.test");
+			resolve(connector, "www.nx.test");
+			connector.doEvents(0);
+			// Search domains: "www" and "svc.ns" (fewer dots than ndots) -> "*.a.test",
+			// "www.a.test" (not fewer) -> itself, "www.a.test." (absolute) -> no search
+			DnsResolver searching = new DnsResolver(connector, new DnsConfig(config.getNameservers(),
+					Arrays.asList("nx.test", "a.test"), 2, 500, 2, Collections.emptyMap()));
+			resolve(searching, "www");
+			resolve(searching, "svc.ns");
+			resolve(searching, "www.a.test");
+			resolve(searching, "www.b.test.");
+			t = System.currentTimeMillis() + 1000;
+			while (System.currentTimeMillis() < t) {
+				connector.doEvents(100);
+			}
+			connector.add(() -> new Connection() {/**/}, 2626);
+			connector.connect(new Connection() {
+				@Override
+				public void onConnect(ConnectionSession session) {
+					System.out.println("Connected to " + session.getRemoteAddr());
+					connector.interrupt();
+				}
+			}, "www.a.test", 2626);
+			connector.doEvents();
+			System.out.println("Queries: " + queries + "/" + resolver.getQueries() +
+					", Hits: " + resolver.getHits() +
+					", Negative Hits: " + resolver.getNegativeHits() +
+					", Misses: " + resolver.getMisses() +
+					", Coalesced: " + resolver.getCoalesced() +
+					", Timeouts: " + resolver.getTimeouts() +
+					", Fallbacks: " + resolver.getFallbacks());
+		}
+		socket.close();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.xqbase.tuna;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestMpscQueue {
+	static final int PRODUCERS = 8;
+
+	static int errors = 0;
+
+	static void check(String name, boolean ok) {
+		if (!ok) {
+			errors ++;
+		}
+		System.out.println((ok ? "OK: " : "FAILED: ") + name);
+	}
+
+	/** Producers offer sequences across many chunks while the consumer polls */
+	static void testOrder(int count) throws InterruptedException {
+		MpscQueue<Long> queue = new MpscQueue<>();
+		Thread[] threads = new Thread[PRODUCERS];
+		for (int i = 0; i < PRODUCERS; i ++) {
+			long producer = i;
+			threads[i] = new Thread(() -> {
+				for (int seq = 0; seq < count; seq ++) {
+					queue.offer(Long.valueOf(producer << 32 | seq));
+				}
+			});
+		}
+		long startTime = System.currentTimeMillis();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		int[] next = new int[PRODUCERS];
+		int received = 0, disorders = 0;
+		while (received < PRODUCERS * count) {
+			Long e = queue.poll();
+			if (e == null) {
+				Thread.yield();
+				continue;
+			}
+			int producer = (int) (e.longValue() >>> 32);
+			int seq = (int) e.longValue();
+			if (seq != next[producer]) {
+				disorders ++;
+			}
+			next[producer] = seq + 1;
+			received ++;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		System.out.println("Time: " + (System.currentTimeMillis() - startTime) + ", " +
+				"Received: " + received + ", Disorders: " + disorders);
+		check("Order of " + PRODUCERS + " producers",
+				disorders == 0 && queue.poll() == null && queue.isEmpty());
+	}
+
+	/**
+	 * Producers post to a loop with pauses, so the loop parks in select
+	 * and must be woken up by one of the posts.
+	 */
+	static void testWakeup(int count) throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(PRODUCERS * count);
+		int[] next = new int[PRODUCERS];
+		int[] disorders = {0};
+		long[] maxLatency = {0};
+		ConnectorImpl connector = new ConnectorImpl();
+		Thread loop = new Thread(connector::doEvents);
+		// A loop never woken up would not exit
+		loop.setDaemon(true);
+		loop.start();
+		Thread[] threads = new Thread[PRODUCERS];
+		for (int i = 0; i < PRODUCERS; i ++) {
+			int producer = i;
+			threads[i] = new Thread(() -> {
+				Random random = new Random();
+				for (int seq = 0; seq < count; seq ++) {
+					if (random.nextInt(4) == 0) {
+						try {
+							Thread.sleep(random.nextInt(3));
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					int seq_ = seq;
+					long posted = System.nanoTime();
+					connector.invokeLater(() -> {
+						maxLatency[0] = Math.max(maxLatency[0], System.nanoTime() - posted);
+						if (seq_ != next[producer]) {
+							disorders[0] ++;
+						}
+						next[producer] = seq_ + 1;
+						latch.countDown();
+					});
+				}
+			});
+			threads[i].start();
+		}
+		boolean done = latch.await(10, TimeUnit.SECONDS);
+		connector.interrupt();
+		loop.join(1000);
+		if (loop.isAlive()) {
+			done = false;
+		} else {
+			connector.close();
+		}
+		System.out.println("Remaining: " + latch.getCount() + ", Disorders: " +
+				disorders[0] + ", Max Latency: " + maxLatency[0] / 1000000 + " ms");
+		check("Wakeup of a parked loop", done && disorders[0] == 0 &&
+				maxLatency[0] < TimeUnit.SECONDS.toNanos(1));
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		testOrder(1000000);
+		testWakeup(2000);
+		System.out.println(errors == 0 ? "ALL OK" : errors + " FAILED");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.xqbase.tuna;
+
+import java.io.OutputStream;
+
+public class TestStream {
+	static final int TOTAL = 16 * 1048576;
+	static final int PAUSE = 2000;
+
+	static long maxQueued = 0, received = 0, errors = 0;
+
+	public static void main(String[] args) throws Exception {
+		try (ConnectorImpl connector = new ConnectorImpl()) {
+			// Writes a pattern in large blocks, the first one while IDLE
+			connector.add(StreamConnection.serverConnection(connector, connection -> {
+				byte[] b = new byte[Connection.MAX_BUFFER_SIZE * 4];
+				OutputStream out = connection.getOutputStream();
+				for (int pos = 0; pos < TOTAL; pos += b.length) {
+					for (int i = 0; i < b.length; i ++) {
+						b[i] = (byte) (pos + i);
+					}
+					out.write(b);
+				}
+			}), 2626);
+			// Reads nothing for a while, so the server must block
+			connector.connect(new Connection() {
+				private ConnectionHandler handler;
+
+				@Override
+				public void setHandler(ConnectionHandler handler) {
+					this.handler = handler;
+				}
+
+				@Override
+				public void onRecv(byte[] b, int off, int len) {
+					for (int i = 0; i < len; i ++) {
+						if (b[off + i] != (byte) (received + i)) {
+							errors ++;
+						}
+					}
+					received += len;
+				}
+
+				@Override
+				public void onConnect(ConnectionSession session) {
+					handler.setBufferSize(0);
+					connector.postDelayed(() ->
+							handler.setBufferSize(Connection.MAX_BUFFER_SIZE), PAUSE);
+				}
+
+				@Override
+				public void onDisconnect() {
+					connector.interrupt();
+				}
+			}, "localhost", 2626);
+			long startTime = System.currentTimeMillis();
+			connector.scheduleDelayed(() -> {
+				maxQueued = Math.max(maxQueued, connector.getStats().getQueuedBytes());
+			}, 0, 10);
+			connector.doEvents();
+			System.out.print("Time: " + (System.currentTimeMillis() - startTime) + ", ");
+			System.out.print("Received: " + received + "/" + TOTAL + ", ");
+			System.out.print("Errors: " + errors + ", ");
+			System.out.println("Max Queued: " + maxQueued + "/" + Connection.MAX_BUFFER_SIZE);
+			System.out.println(received == TOTAL && errors == 0 &&
+					maxQueued <= Connection.MAX_BUFFER_SIZE ? "OK" : "FAILED");
+		}
+	}
+}
\ No newline at end of file
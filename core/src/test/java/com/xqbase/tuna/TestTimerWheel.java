@@ -0,0 +1,108 @@
+package com.xqbase.tuna;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestTimerWheel {
+	static TimerWheel wheel;
+	static long now;
+	static int errors = 0;
+
+	static void advance(long to, int step) {
+		while (now < to) {
+			now = Math.min(now + step, to);
+			wheel.expire(now);
+		}
+	}
+
+	static void check(String name, boolean ok) {
+		if (!ok) {
+			errors ++;
+		}
+		System.out.println((ok ? "OK: " : "FAILED: ") + name);
+	}
+
+	/** Timers across the boundaries of 256 and 65536 milliseconds, from an unaligned start */
+	static void testCascade(long start) {
+		wheel = new TimerWheel(start);
+		now = start;
+		long[] delays = {0, 1, 2, 255, 256, 257, 511, 512, 65535, 65536, 65537,
+				65536 * 2 + 1, 65536 * 256 - 1, 65536 * 256, 65536 * 256 + 1};
+		long[] fired = new long[delays.length];
+		for (int i = 0; i < delays.length; i ++) {
+			int i_ = i;
+			wheel.add(() -> fired[i_] = fired[i_] == 0 ? now : -1, start + delays[i], 0);
+		}
+		// Timers of the same time run in the order of scheduling after cascading
+		List<String> order = new ArrayList<>();
+		wheel.add(() -> order.add("x"), start + 65537, 0);
+		wheel.add(() -> order.add("y"), start + 65537, 0);
+		wheel.expire(start);
+		advance(start + 70000, 1);
+		advance(start + 65536 * 256 + 100, 7);
+		boolean ok = true;
+		for (int i = 0; i < delays.length; i ++) {
+			long late = fired[i] - (start + delays[i]);
+			if (late < 0 || late > (delays[i] < 70000 ? 0 : 6)) {
+				System.out.println("Delay " + delays[i] + " fired " + late + " ms late");
+				ok = false;
+			}
+		}
+		check("Cascade from " + start, ok && wheel.size() == 0 &&
+				wheel.nextTime() < 0 && order.toString().equals("[x, y]"));
+	}
+
+	/** Closes timers of the same slot, a later slot and itself in a callback */
+	static void testCancel() {
+		wheel = new TimerWheel(1000);
+		now = 1000;
+		int[] runs = new int[4];
+		Timer[] timers = new Timer[4];
+		timers[0] = wheel.add(() -> {
+			runs[0] ++;
+			timers[1].close();
+			timers[2].close();
+		}, 1300, 0);
+		timers[1] = wheel.add(() -> runs[1] ++, 1300, 0);
+		timers[2] = wheel.add(() -> runs[2] ++, 1301, 0);
+		timers[3] = wheel.add(() -> {
+			runs[3] ++;
+			if (runs[3] == 3) {
+				timers[3].close();
+			}
+		}, 1100, 100);
+		advance(3000, 1);
+		check("Cancel in callback", runs[0] == 1 && runs[1] == 0 && runs[2] == 0 &&
+				runs[3] == 3 && wheel.size() == 0 && wheel.nextTime() < 0);
+	}
+
+	/** Periodic timers are re-added after each run, including across a cascade */
+	static void testPeriodic() {
+		long start = 65536 - 300;
+		wheel = new TimerWheel(start);
+		now = start;
+		List<Long> short_ = new ArrayList<>(), long_ = new ArrayList<>();
+		wheel.add(() -> short_.add(Long.valueOf(now - start)), start + 50, 100);
+		wheel.add(() -> long_.add(Long.valueOf(now - start)), start + 65537, 65537);
+		advance(start + 1050, 1);
+		boolean ok = short_.size() == 11;
+		for (int i = 0; ok && i < short_.size(); i ++) {
+			ok = short_.get(i).longValue() == 50 + i * 100;
+		}
+		advance(start + 65537 * 3, 1);
+		ok = ok && long_.size() == 3;
+		for (int i = 0; ok && i < long_.size(); i ++) {
+			ok = long_.get(i).longValue() == 65537L * (i + 1);
+		}
+		check("Periodic", ok && wheel.size() == 2 && short_.size() == 1 + (65537 * 3 - 50) / 100);
+	}
+
+	public static void main(String[] args) {
+		testCascade(1000);
+		testCascade(65536 * 3 - 5);
+		testCascade(65536L * 65536 * 7 + 123);
+		testCancel();
+		testPeriodic();
+		System.out.println(errors == 0 ? "ALL OK" : errors + " FAILED");
+	}
+}
\ No newline at end of file
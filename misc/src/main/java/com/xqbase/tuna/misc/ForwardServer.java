@@ -1,6 +1,8 @@
 package com.xqbase.tuna.misc;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
@@ -11,6 +13,7 @@ import com.xqbase.tuna.ConnectionHandler;
 import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.Connector;
 import com.xqbase.tuna.ServerConnection;
+import com.xqbase.tuna.util.SourcePool;
 
 class PeerConnection implements Connection {
 	PeerConnection peer;
@@ -32,6 +35,23 @@ class PeerConnection implements Connection {
 		}
 	}
 
+	@Override
+	public void onRecv(ByteBuffer buffer) {
+		if (peer != null) {
+			peer.handler.send(buffer);
+		}
+	}
+
+	@Override
+	public void onConnect(ConnectionSession session) {
+		// Block the peer after a full buffer queued, and unblock after all sent
+		handler.setWatermarks(0, MAX_BUFFER_SIZE);
+		// Relay without copying if neither end has filters
+		if (peer != null) {
+			handler.relay(peer.handler);
+		}
+	}
+
 	@Override
 	public void onQueue(int size) {
 		if (peer != null) {
@@ -41,15 +61,21 @@ class PeerConnection implements Connection {
 
 	@Override
 	public void onDisconnect() {
+		release();
 		if (peer != null) {
 			peer.peer = null;
+			peer.release();
 			peer.handler.disconnect();
 		}
 	}
+
+	/** Releases resources held by the pair, called by either side */
+	void release() {/**/}
 }
 
 class ForwardConnection extends PeerConnection {
 	private ForwardServer forward;
+	private InetSocketAddress source = null;
 
 	ForwardConnection(ForwardServer forward) {
 		super(null);
@@ -58,18 +84,35 @@ class ForwardConnection extends PeerConnection {
 
 	@Override
 	public void onConnect(ConnectionSession session) {
+		// Same as the peer, see PeerConnection.onConnect()
+		handler.setWatermarks(0, MAX_BUFFER_SIZE);
 		peer = new PeerConnection(this);
 		Connection connection = peer;
 		for (Supplier<? extends ConnectionFilter> serverFilter : forward.serverFilters) {
 			connection = connection.appendFilter(serverFilter.get());
 		}
 		try {
-			forward.connector.connect(connection, forward.host, forward.port);
+			if (forward.sourcePool == null) {
+				forward.connector.connect(connection, forward.host, forward.port);
+			} else {
+				source = forward.sourcePool.acquire(forward.host, forward.port);
+				forward.connector.connect(connection, InetSocketAddress.
+						createUnresolved(forward.host, forward.port), source);
+			}
 		} catch (IOException e) {
+			release();
 			peer = null;
 			handler.disconnect();
 		}
 	}
+
+	@Override
+	void release() {
+		if (source != null) {
+			forward.sourcePool.release(source, forward.host, forward.port);
+			source = null;
+		}
+	}
 }
 
 /** A port redirecting server. */
@@ -77,6 +120,7 @@ public class ForwardServer implements ServerConnection {
 	Connector connector;
 	String host;
 	int port;
+	SourcePool sourcePool = null;
 	List<Supplier<? extends ConnectionFilter>> serverFilters = new ArrayList<>();
 
 	@Override
@@ -100,4 +144,9 @@ public class ForwardServer implements ServerConnection {
 	public void appendRemoteFilter(Supplier<? extends ConnectionFilter> serverFilter) {
 		serverFilters.add(serverFilter);
 	}
+
+	/** Binds remote connections to local addresses from a {@link SourcePool}. */
+	public void setSourcePool(SourcePool sourcePool) {
+		this.sourcePool = sourcePool;
+	}
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import com.xqbase.tuna.packet.PacketConsumer;
 import com.xqbase.tuna.packet.PacketException;
 import com.xqbase.tuna.packet.PacketFilter;
 import com.xqbase.tuna.packet.PacketParser;
+import com.xqbase.tuna.util.ByteArrayPool;
 import com.xqbase.tuna.util.ByteArrayQueue;
 import com.xqbase.tuna.util.Bytes;
 
@@ -37,7 +38,7 @@ public class ZLibFilter extends PacketFilter {
 	public PacketConsumer getConsumer() {
 		return (b, off, len) -> {
 			ByteArrayQueue baq = new ByteArrayQueue();
-			byte[] buffer = new byte[2048];
+			byte[] buffer = ByteArrayPool.borrow(2048);
 			try (InflaterInputStream inflater = new InflaterInputStream(new
 					ByteArrayInputStream(b, off + 2, len - 2))) {
 				int bytesRead;
@@ -49,9 +50,13 @@ public class ZLibFilter extends PacketFilter {
 					}
 				}
 			} catch (IOException e) {
+				baq.clear();
 				throw new PacketException(e.getMessage());
+			} finally {
+				ByteArrayPool.release(buffer);
 			}
 			super.getConsumer().accept(baq.array(), baq.offset(), baq.length());
+			baq.clear();
 		};
 	}
 
@@ -69,5 +74,6 @@ public class ZLibFilter extends PacketFilter {
 		}
 		Bytes.setShort(baq.length(), baq.array(), baq.offset());
 		super.send(baq.array(), baq.offset(), baq.length());
+		baq.clear();
 	}
 }
\ No newline at end of file
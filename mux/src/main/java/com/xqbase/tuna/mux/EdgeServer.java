@@ -4,17 +4,15 @@ import com.xqbase.tuna.Connection;
 import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.Connector;
 import com.xqbase.tuna.ServerConnection;
-import com.xqbase.tuna.TimerHandler;
 import com.xqbase.tuna.packet.PacketFilter;
 import com.xqbase.tuna.util.Bytes;
 
 class EdgeMuxConnection extends MuxClientConnection {
 	private static final int HEAD_SIZE = MuxPacket.HEAD_SIZE;
 
-	private long accessed = System.currentTimeMillis();
-	private int pingElapse = 0;
-	private TimerHandler.Closeable closeable = null;
 	private byte[] authPhrase;
+	/** Whether pinged for nothing received, and waiting for any packet */
+	private boolean pinged = false;
 
 	EdgeMuxConnection(MuxContext context, byte[] authPhrase) {
 		super(context, false);
@@ -23,7 +21,10 @@ class EdgeMuxConnection extends MuxClientConnection {
 
 	@Override
 	public void onRecv(byte[] b, int off, int len) {
-		accessed = System.currentTimeMillis();
+		if (pinged) {
+			pinged = false;
+			handler.setIdleTimeout(MuxPacket.PING_INTERVAL, MuxPacket.PING_INTERVAL, 0);
+		}
 		MuxPacket packet = new MuxPacket(b, off);
 		switch (packet.cmd) {
 		case MuxPacket.SERVER_PONG:
@@ -46,26 +47,26 @@ class EdgeMuxConnection extends MuxClientConnection {
 			System.arraycopy(authPhrase, 0, b, HEAD_SIZE, authPhrase.length);
 			MuxPacket.send(handler, b, MuxPacket.CLIENT_AUTH, 0);
 		}
-		closeable = context.scheduleDelayed(() -> {
-			if (System.currentTimeMillis() > accessed + 60000) {
-				disconnect();
-				return;
-			}
-			pingElapse ++;
-			if (pingElapse == 45) {
-				pingElapse = 0;
-				MuxPacket.send(handler, MuxPacket.CLIENT_PING, 0);
-			}
-		}, 1000, 1000);
+		pinged = false;
+		handler.setIdleTimeout(MuxPacket.PING_INTERVAL, MuxPacket.PING_INTERVAL, 0);
 	}
 
 	@Override
-	public void onDisconnect() {
-		super.onDisconnect();
-		if (closeable != null) {
-			closeable.close();
-			closeable = null;
+	public void onIdle(int idle) {
+		if (idle != READ_IDLE) {
+			MuxPacket.send(handler, MuxPacket.CLIENT_PING, 0);
+			return;
+		}
+		if (pinged) {
+			// Nothing received, not even SERVER_PONG, within IDLE_TIMEOUT
+			disconnect();
+			return;
 		}
+		// Ping for a SERVER_PONG, even if busy sending
+		pinged = true;
+		MuxPacket.send(handler, MuxPacket.CLIENT_PING, 0);
+		handler.setIdleTimeout(MuxPacket.IDLE_TIMEOUT - MuxPacket.PING_INTERVAL,
+				MuxPacket.PING_INTERVAL, 0);
 	}
 }
 
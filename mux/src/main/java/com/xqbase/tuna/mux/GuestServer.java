@@ -3,17 +3,15 @@ package com.xqbase.tuna.mux;
 import com.xqbase.tuna.Connection;
 import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.ServerConnection;
-import com.xqbase.tuna.TimerHandler;
 import com.xqbase.tuna.packet.PacketFilter;
 import com.xqbase.tuna.util.Bytes;
 
 class GuestMuxConnection extends MuxServerConnection {
 	private static final int HEAD_SIZE = MuxPacket.HEAD_SIZE;
 
-	private long accessed = System.currentTimeMillis();
-	private int pingElapse = 0;
-	private TimerHandler.Closeable closeable = null;
 	private byte[] authPhrase;
+	/** Whether pinged for nothing received, and waiting for any packet */
+	private boolean pinged = false;
 	private int publicPort;
 
 	GuestMuxConnection(ServerConnection server, MuxContext context,
@@ -25,7 +23,10 @@ class GuestMuxConnection extends MuxServerConnection {
 
 	@Override
 	public void onRecv(byte[] b, int off, int len) {
-		accessed = System.currentTimeMillis();
+		if (pinged) {
+			pinged = false;
+			handler.setIdleTimeout(MuxPacket.PING_INTERVAL, MuxPacket.PING_INTERVAL, 0);
+		}
 		MuxPacket packet = new MuxPacket(b, off);
 		switch (packet.cmd) {
 		case MuxPacket.SERVER_PONG:
@@ -50,26 +51,26 @@ class GuestMuxConnection extends MuxServerConnection {
 			MuxPacket.send(handler, b, MuxPacket.CLIENT_AUTH, 0);
 		}
 		MuxPacket.send(handler, MuxPacket.CLIENT_LISTEN, publicPort);
-		closeable = context.scheduleDelayed(() -> {
-			if (System.currentTimeMillis() > accessed + 60000) {
-				disconnect();
-				return;
-			}
-			pingElapse ++;
-			if (pingElapse == 45) {
-				pingElapse = 0;
-				MuxPacket.send(handler, MuxPacket.CLIENT_PING, 0);
-			}
-		}, 1000, 1000);
+		pinged = false;
+		handler.setIdleTimeout(MuxPacket.PING_INTERVAL, MuxPacket.PING_INTERVAL, 0);
 	}
 
 	@Override
-	public void onDisconnect() {
-		super.onDisconnect();
-		if (closeable != null) {
-			closeable.close();
-			closeable = null;
+	public void onIdle(int idle) {
+		if (idle != READ_IDLE) {
+			MuxPacket.send(handler, MuxPacket.CLIENT_PING, 0);
+			return;
+		}
+		if (pinged) {
+			// Nothing received, not even SERVER_PONG, within IDLE_TIMEOUT
+			disconnect();
+			return;
 		}
+		// Ping for a SERVER_PONG, even if busy sending
+		pinged = true;
+		MuxPacket.send(handler, MuxPacket.CLIENT_PING, 0);
+		handler.setIdleTimeout(MuxPacket.IDLE_TIMEOUT - MuxPacket.PING_INTERVAL,
+				MuxPacket.PING_INTERVAL, 0);
 	}
 }
 
@@ -1,22 +1,17 @@
 package com.xqbase.tuna.mux;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Set;
 
 import com.xqbase.tuna.Connection;
+import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.Connector;
 import com.xqbase.tuna.ServerConnection;
-import com.xqbase.tuna.TimerHandler;
 import com.xqbase.tuna.packet.PacketFilter;
 import com.xqbase.tuna.util.Bytes;
 
 class HostMuxConnection extends MuxClientConnection implements ServerConnection {
 	private static final int HEAD_SIZE = MuxPacket.HEAD_SIZE;
 
-	long accessed = System.currentTimeMillis();
-
 	private Connector.Closeable closeable = null;
 	private HostServer host;
 	private boolean authed;
@@ -28,9 +23,6 @@ class HostMuxConnection extends MuxClientConnection implements ServerConnection
 
 	@Override
 	public void onRecv(byte[] b, int off, int len) {
-		host.timeoutSet.remove(this);
-		accessed = System.currentTimeMillis();
-		host.timeoutSet.add(this);
 		MuxPacket packet = new MuxPacket(b, off);
 		switch (packet.cmd) {
 		case MuxPacket.CLIENT_PING:
@@ -63,10 +55,20 @@ class HostMuxConnection extends MuxClientConnection implements ServerConnection
 		}
 	}
 
+	@Override
+	public void onConnect(ConnectionSession session) {
+		super.onConnect(session);
+		handler.setIdleTimeout(MuxPacket.IDLE_TIMEOUT, 0, 0);
+	}
+
+	@Override
+	public void onIdle(int idle) {
+		disconnect();
+	}
+
 	@Override
 	public void onDisconnect() {
 		super.onDisconnect();
-		host.timeoutSet.remove(this);
 		if (closeable != null) {
 			closeable.close();
 		}
@@ -79,12 +81,9 @@ class HostMuxConnection extends MuxClientConnection implements ServerConnection
 }
 
 public class HostServer implements ServerConnection, AutoCloseable {
-	Set<HostMuxConnection> timeoutSet = new LinkedHashSet<>();
 	Connector connector;
 	MuxContext context;
 
-	private TimerHandler.Closeable closeable;
-
 	/**
 	 * Creates a Host Server for {@link GuestServer}s to open ports
 	 * @param connector The {@link Connector} to accept public connections
@@ -92,26 +91,15 @@ public class HostServer implements ServerConnection, AutoCloseable {
 	public HostServer(Connector connector, MuxContext context) {
 		this.connector = connector;
 		this.context = context;
-		closeable = context.scheduleDelayed(() -> {
-			long now = System.currentTimeMillis();
-			Iterator<HostMuxConnection> i = timeoutSet.iterator();
-			HostMuxConnection guest;
-			while (i.hasNext() && now > (guest = i.next()).accessed + 60000) {
-				i.remove();
-				guest.disconnect();
-			}
-		}, 1000, 1000);
 	}
 
 	@Override
 	public Connection get() {
-		HostMuxConnection guest = new HostMuxConnection(this, context);
-		timeoutSet.add(guest);
-		return guest.appendFilter(new PacketFilter(MuxPacket.PARSER));
+		return new HostMuxConnection(this, context).
+				appendFilter(new PacketFilter(MuxPacket.PARSER));
 	}
 
+	/** Idle mux connections are closed by their connector, so nothing to close */
 	@Override
-	public void close() {
-		closeable.close();
-	}
+	public void close() {/**/}
 }
\ No newline at end of file
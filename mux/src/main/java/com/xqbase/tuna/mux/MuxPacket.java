@@ -8,6 +8,11 @@ import com.xqbase.tuna.util.Bytes;
 class MuxPacket {
 	private static final int HEAD_TAG = 0x2095;
 
+	/** A mux connection is closed if nothing received within this time */
+	static final int IDLE_TIMEOUT = 60000;
+	/** A client pings if nothing sent or nothing received within this time */
+	static final int PING_INTERVAL = 45000;
+
 	// Client Commands
 	static final int CLIENT_PING		= 0x101;
 	static final int CLIENT_AUTH		= 0x111;
@@ -78,10 +83,15 @@ class MuxPacket {
 	}
 
 	static void send(ConnectionHandler handler, byte[] b, int cmd, int cid) {
+		send(handler, b, b.length, cmd, cid);
+	}
+
+	/** @param len - length of the packet in <code>b</code>, which may be a longer pooled array */
+	static void send(ConnectionHandler handler, byte[] b, int len, int cmd, int cid) {
 		Bytes.setShort(HEAD_TAG, b, 0);
-		Bytes.setShort(b.length - HEAD_SIZE, b, 2);
+		Bytes.setShort(len - HEAD_SIZE, b, 2);
 		Bytes.setShort(cmd, b, 4);
 		Bytes.setShort(cid, b, 6);
-		handler.send(b);
+		handler.send(b, 0, len);
 	}
 }
\ No newline at end of file
@@ -1,20 +1,14 @@
 package com.xqbase.tuna.mux;
 
-import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Set;
-
 import com.xqbase.tuna.Connection;
+import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.ServerConnection;
-import com.xqbase.tuna.TimerHandler;
 import com.xqbase.tuna.packet.PacketFilter;
 import com.xqbase.tuna.util.Bytes;
 
 class OriginMuxConnection extends MuxServerConnection {
 	private static final int HEAD_SIZE = MuxPacket.HEAD_SIZE;
 
-	long accessed = System.currentTimeMillis();
-
 	private OriginServer origin;
 	private boolean authed;
 
@@ -26,9 +20,6 @@ class OriginMuxConnection extends MuxServerConnection {
 
 	@Override
 	public void onRecv(byte[] b, int off, int len) {
-		origin.timeoutSet.remove(this);
-		accessed = System.currentTimeMillis();
-		origin.timeoutSet.add(this);
 		MuxPacket packet = new MuxPacket(b, off);
 		int cid = packet.cid;
 		switch (packet.cmd) {
@@ -54,9 +45,14 @@ class OriginMuxConnection extends MuxServerConnection {
 	}
 
 	@Override
-	public void onDisconnect() {
-		super.onDisconnect();
-		origin.timeoutSet.remove(this);
+	public void onConnect(ConnectionSession session) {
+		super.onConnect(session);
+		handler.setIdleTimeout(MuxPacket.IDLE_TIMEOUT, 0, 0);
+	}
+
+	@Override
+	public void onIdle(int idle) {
+		handler.disconnect();
 	}
 }
 
@@ -66,35 +62,21 @@ class OriginMuxConnection extends MuxServerConnection {
  * @see EdgeServer
  */
 public class OriginServer implements ServerConnection, AutoCloseable {
-	Set<OriginMuxConnection> timeoutSet = new LinkedHashSet<>();
 	ServerConnection server;
 	MuxContext context;
 
-	private TimerHandler.Closeable closeable;
-
 	public OriginServer(ServerConnection server, MuxContext context) {
 		this.server = server;
 		this.context = context;
-		closeable = context.scheduleDelayed(() -> {
-			long now = System.currentTimeMillis();
-			Iterator<OriginMuxConnection> i = timeoutSet.iterator();
-			OriginMuxConnection mux;
-			while (i.hasNext() && now > (mux = i.next()).accessed + 60000) {
-				i.remove();
-				mux.handler.disconnect();
-			}
-		}, 1000, 1000);
 	}
 
 	@Override
 	public Connection get() {
-		OriginMuxConnection mux = new OriginMuxConnection(this);
-		timeoutSet.add(mux);
-		return mux.appendFilter(new PacketFilter(MuxPacket.PARSER));
+		return new OriginMuxConnection(this).
+				appendFilter(new PacketFilter(MuxPacket.PARSER));
 	}
 
+	/** Idle mux connections are closed by their connector, so nothing to close */
 	@Override
-	public void close() {
-		closeable.close();
-	}
+	public void close() {/**/}
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import com.xqbase.tuna.Connection;
 import com.xqbase.tuna.ConnectionHandler;
 import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.ssl.SSLConnectionSession;
+import com.xqbase.tuna.util.ByteArrayPool;
 import com.xqbase.tuna.util.Bytes;
 import com.xqbase.util.Log;
 
@@ -32,9 +33,10 @@ class TerminalConnection implements Connection {
 
 	@Override
 	public void onRecv(byte[] b, int off, int len) {
-		byte[] bb = new byte[HEAD_SIZE + len];
+		byte[] bb = ByteArrayPool.borrow(HEAD_SIZE + len);
 		System.arraycopy(b, off, bb, HEAD_SIZE, len);
-		MuxPacket.send(mux.handler, bb, MuxPacket.CONNECTION_RECV, cid);
+		MuxPacket.send(mux.handler, bb, HEAD_SIZE + len, MuxPacket.CONNECTION_RECV, cid);
+		ByteArrayPool.release(bb);
 	}
 
 	@Override
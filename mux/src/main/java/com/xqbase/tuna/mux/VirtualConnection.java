@@ -3,6 +3,7 @@ package com.xqbase.tuna.mux;
 import com.xqbase.tuna.Connection;
 import com.xqbase.tuna.ConnectionHandler;
 import com.xqbase.tuna.ConnectionWrapper;
+import com.xqbase.tuna.util.ByteArrayPool;
 import com.xqbase.tuna.util.Bytes;
 import com.xqbase.util.Log;
 
@@ -27,9 +28,10 @@ class VirtualConnection extends ConnectionWrapper implements ConnectionHandler {
 
 	@Override
 	public void send(byte[] b, int off, int len) {
-		byte[] bb = new byte[HEAD_SIZE + len];
+		byte[] bb = ByteArrayPool.borrow(HEAD_SIZE + len);
 		System.arraycopy(b, off, bb, HEAD_SIZE, len);
-		MuxPacket.send(mux.handler, bb, MuxPacket.HANDLER_SEND, cid);
+		MuxPacket.send(mux.handler, bb, HEAD_SIZE + len, MuxPacket.HANDLER_SEND, cid);
+		ByteArrayPool.release(bb);
 	}
 
 	@Override
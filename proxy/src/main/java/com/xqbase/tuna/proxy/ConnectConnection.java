@@ -1,5 +1,7 @@
 package com.xqbase.tuna.proxy;
 
+import java.nio.ByteBuffer;
+
 import com.xqbase.tuna.ConnectionSession;
 import com.xqbase.tuna.http.HttpStatus;
 import com.xqbase.util.Log;
@@ -23,12 +25,19 @@ class ConnectConnection extends PeerConnection implements HttpStatus {
 		proxyHandler.send(b, off, len);
 	}
 
+	@Override
+	public void onRecv(ByteBuffer buffer) {
+		proxyHandler.send(buffer);
+	}
+
 	@Override
 	public void onConnect(ConnectionSession session) {
 		super.onConnect(session);
 		if (!proxyChain) {
 			proxyHandler.send(CONNECTION_ESTABLISHED);
 		}
+		// Relay without copying if neither end has filters
+		handler.relay(proxyHandler);
 	}
 
 	@Override
@@ -1,5 +1,8 @@
 package com.xqbase.tuna.proxy;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
 import com.xqbase.tuna.Connection;
 import com.xqbase.tuna.ConnectionHandler;
 import com.xqbase.tuna.ConnectionSession;
@@ -15,6 +18,9 @@ abstract class PeerConnection implements Connection {
 	boolean connected, disconnected = false;
 	int logLevel;
 	String remote, local = " / 0.0.0.0:0";
+	private String host;
+	private int port;
+	private InetSocketAddress source = null;
 
 	PeerConnection(ProxyServer server, ProxyConnection proxy, int logLevel) {
 		this.server = server;
@@ -28,6 +34,34 @@ abstract class PeerConnection implements Connection {
 				local + (resp ? " <= " : " => ") + remote;
 	}
 
+	/**
+	 * Connects to <code>host:port</code> from a source of {@link ProxyServer#sourcePool},
+	 * which is released after disconnected.
+	 */
+	void connect(Connection connection, String host_, int port_) throws IOException {
+		if (server.sourcePool == null) {
+			server.connector.connect(connection, host_, port_);
+			return;
+		}
+		host = host_;
+		port = port_;
+		source = server.sourcePool.acquire(host, port);
+		try {
+			server.connector.connect(connection,
+					InetSocketAddress.createUnresolved(host, port), source);
+		} catch (IOException e) {
+			releaseSource();
+			throw e;
+		}
+	}
+
+	private void releaseSource() {
+		if (source != null) {
+			server.sourcePool.release(source, host, port);
+			source = null;
+		}
+	}
+
 	@Override
 	public void setHandler(ConnectionHandler handler) {
 		this.handler = handler;
@@ -45,6 +79,7 @@ abstract class PeerConnection implements Connection {
 	@Override
 	public void onConnect(ConnectionSession session) {
 		connected = true;
+		handler.setWatermarks(0, MAX_BUFFER_SIZE);
 		local = " / " + session.getLocalAddr() + ":" + session.getLocalPort();
 		if (logLevel >= LOG_VERBOSE) {
 			Log.v("Connection Established, " + toString(false));
@@ -65,6 +100,7 @@ abstract class PeerConnection implements Connection {
 		if (!disconnected) {
 			disconnected = true;
 			server.totalPeers --;
+			releaseSource();
 		}
 	}
 }
\ No newline at end of file
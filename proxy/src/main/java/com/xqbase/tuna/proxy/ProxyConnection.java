@@ -297,7 +297,7 @@ public class ProxyConnection
 				} else {
 					connection = connect;
 				}
-				server.connector.connect(connection, host, port);
+				connect.connect(connection, host, port);
 			} catch (IOException e) {
 				throw new HttpPacketException("Unreachable Host",
 						e.getMessage() + ": " + host);
@@ -447,7 +447,7 @@ public class ProxyConnection
 			try {
 				server.totalPeers ++;
 				// onDisconnect() will never be called here in tuna-core-0.1.2
-				server.connector.connect(connection, connectHost, port);
+				client.connect(connection, connectHost, port);
 			} catch (IOException e) {
 				throw new HttpPacketException("Unreachable Host",
 						e.getMessage() + ": " + connectHost);
@@ -566,6 +566,8 @@ public class ProxyConnection
 	public void onConnect(ConnectionSession session_) {
 		session = session_;
 		remote = session.getRemoteAddr() + ":" + session.getRemotePort();
+		// Block the peer after a full buffer queued, and unblock after all sent
+		handler.setWatermarks(0, MAX_BUFFER_SIZE);
 		server.getConnections().add(this);
 		server.proxyTimeoutQueue.offer(this);
 	}
@@ -17,12 +17,14 @@ import java.util.function.UnaryOperator;
 import javax.net.ssl.SSLContext;
 
 import com.xqbase.tuna.Connector;
+import com.xqbase.tuna.ConnectorImpl;
 import com.xqbase.tuna.EventQueue;
 import com.xqbase.tuna.ServerConnection;
 import com.xqbase.tuna.http.HttpPacket;
 import com.xqbase.tuna.ssl.SSLFilter;
 import com.xqbase.tuna.ssl.SSLManagers;
 import com.xqbase.tuna.util.LinkedEntry;
+import com.xqbase.tuna.util.SourcePool;
 import com.xqbase.tuna.util.TimeoutQueue;
 import com.xqbase.util.Log;
 import com.xqbase.util.Time;
@@ -50,6 +52,7 @@ public class ProxyServer implements ServerConnection, Runnable {
 	Executor executor;
 	TimeoutQueue<SSLFilter> ssltq = SSLFilter.getTimeoutQueue(DEFAULT_TIMEOUT);
 	SSLContext sslc = defaultSSLContext;
+	SourcePool sourcePool = null;
 	BiPredicate<String, String> auth = (t, u) -> true;
 	UnaryOperator<String> lookup = t -> t;
 	BiConsumerEx<ProxyConnection, HttpPacket, RequestException>
@@ -146,6 +149,9 @@ public class ProxyServer implements ServerConnection, Runnable {
 
 		// Dump Pool Info
 		Log.v("Total Peers: " + totalPeers + ", Idle Peers: " + idlePeers);
+		if (connector instanceof ConnectorImpl) {
+			Log.v("Connector: " + ((ConnectorImpl) connector).getStats());
+		}
 		StringWriter sw = new StringWriter();
 		PrintWriter out = new PrintWriter(sw);
 
@@ -209,6 +215,18 @@ public class ProxyServer implements ServerConnection, Runnable {
 		this.sslc = sslc;
 	}
 
+	/**
+	 * Binds upstream connections to local addresses from a {@link SourcePool},
+	 * which can be shared by the servers of all loops.
+	 */
+	public void setSourcePool(SourcePool sourcePool) {
+		this.sourcePool = sourcePool;
+	}
+
+	public SourcePool getSourcePool() {
+		return sourcePool;
+	}
+
 	public void setAuth(BiPredicate<String, String> auth) {
 		this.auth = auth;
 	}
@@ -12,14 +12,19 @@ import java.security.KeyStore;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -112,39 +117,38 @@ public class TunaProxy {
 		String logValue = Conf.DEBUG ? "verbose" : p.getProperty("log");
 		int logLevel = logValue == null ? 0 : LOG_VALUE.indexOf(logValue.toLowerCase()) + 1;
 
-		try (ConnectorImpl connector = new ConnectorImpl()) {
+		int workers = Numbers.parseInt(p.getProperty("workers"), 0);
+		boolean sharded = Conf.getBoolean(p.getProperty("sharded"), false);
+
+		try (ConnectorImpl connector = new ConnectorImpl(workers)) {
 			service.register(connector::interrupt);
 
-			ProxyServer server = new ProxyServer(connector, connector, connector);
+			// Reloaded in main thread and read by all loops
+			AtomicReference<Map<String, String>> authMap =
+					new AtomicReference<>(Collections.emptyMap());
 			if (authEnabled) {
-				Map<String, String> authMap = new HashMap<>();
-				server.setAuth((t, u) -> {
-					if (t == null) {
-						return false;
-					}
-					String password = authMap.get(t);
-					return password != null && password.equals(u);
-				});
 				connector.scheduleDelayed(() -> {
-					authMap.clear();
-					Conf.load("Auth").forEach((k, v) ->
-							authMap.put((String) k, (String) v));
+					Map<String, String> map = new HashMap<>();
+					Conf.load("Auth").forEach((k, v) -> map.put((String) k, (String) v));
+					authMap.set(map);
 				}, 0, 10000);
 			}
+			AtomicReference<Map<String, String>> lookupMap =
+					new AtomicReference<>(Collections.emptyMap());
 			if (lookupEnabled) {
-				Map<String, String> lookupMap = new HashMap<>();
-				server.setLookup(lookupMap::get);
 				connector.scheduleDelayed(() -> {
-					lookupMap.clear();
-					Conf.load("Lookup").forEach((k, v) ->
-							lookupMap.put((String) k, (String) v));
+					Map<String, String> map = new HashMap<>();
+					Conf.load("Lookup").forEach((k, v) -> map.put((String) k, (String) v));
+					lookupMap.set(map);
 				}, 0, 10000);
 			}
+			AtomicReference<Set<String>> domainSet =
+					new AtomicReference<>(Collections.emptySet());
+			AtomicReference<List<String>> suffixList =
+					new AtomicReference<>(Collections.emptyList());
 			if (proxyChain != null) {
-				HashSet<String> domains = new HashSet<>();
-				ArrayList<String> suffixes = new ArrayList<>();
 				connector.scheduleDelayed(Runnables.wrap(() -> {
-					domains.clear();
+					HashSet<String> domains = new HashSet<>();
 					String filename = Conf.
 							getAbsolutePath("conf/ProxyDomains.txt");
 					try (BufferedReader in = new BufferedReader(new
@@ -158,57 +162,81 @@ public class TunaProxy {
 					} catch (IOException e) {
 						Log.w(filename + ": " + e.getMessage()); // Ignored
 					}
-					suffixes.clear();
+					ArrayList<String> suffixes = new ArrayList<>();
 					for (String domain : domains) {
 						suffixes.add("." + domain);
 					}
+					domainSet.set(domains);
+					suffixList.set(suffixes);
 				}), 0, 10000);
-				server.setOnRequest((connection, packet) -> {
-					String host;
-					if (packet.getMethod().toUpperCase().equals("CONNECT")) {
-						String uri = packet.getUri();
-						int colon = uri.indexOf(':');
-						host = colon < 0 ? uri : uri.substring(0, colon);
-					} else {
-						URL url;
-						try {
-							url = new URL(packet.getUri());
-						} catch (IOException e) {
-							if (logLevel >= ProxyConnection.LOG_DEBUG) {
-								Log.d("Invalid URI: " + packet.getUri());
+			}
+
+			// ProxyServer is not thread-safe, so create one for each loop
+			Map<ConnectorImpl, ProxyServer> servers = new IdentityHashMap<>();
+			connector.forEachLoop(loop -> {
+				ProxyServer server = new ProxyServer(loop, loop, loop);
+				if (authEnabled) {
+					server.setAuth((t, u) -> {
+						if (t == null) {
+							return false;
+						}
+						String password = authMap.get().get(t);
+						return password != null && password.equals(u);
+					});
+				}
+				if (lookupEnabled) {
+					server.setLookup(t -> lookupMap.get().get(t));
+				}
+				if (proxyChain != null) {
+					server.setOnRequest((connection, packet) -> {
+						String host;
+						if (packet.getMethod().toUpperCase().equals("CONNECT")) {
+							String uri = packet.getUri();
+							int colon = uri.indexOf(':');
+							host = colon < 0 ? uri : uri.substring(0, colon);
+						} else {
+							URL url;
+							try {
+								url = new URL(packet.getUri());
+							} catch (IOException e) {
+								if (logLevel >= ProxyConnection.LOG_DEBUG) {
+									Log.d("Invalid URI: " + packet.getUri());
+								}
+								return;
 							}
-							return;
+							host = url.getHost();
 						}
-						host = url.getHost();
-					}
-					host = host.toLowerCase();
-					boolean chained = domains.contains(host);
-					if (!chained) {
-						for (String suffix : suffixes) {
-							if (host.endsWith(suffix)) {
-								chained = true;
-								break;
+						host = host.toLowerCase();
+						boolean chained = domainSet.get().contains(host);
+						if (!chained) {
+							for (String suffix : suffixList.get()) {
+								if (host.endsWith(suffix)) {
+									chained = true;
+									break;
+								}
 							}
 						}
-					}
-					if (chained) {
-						connection.setAttribute(ProxyConnection.
-								PROXY_CHAIN_KEY, proxyChain);
-						if (proxyAuth != null) {
+						if (chained) {
 							connection.setAttribute(ProxyConnection.
-									PROXY_AUTH_KEY, proxyAuth);
+									PROXY_CHAIN_KEY, proxyChain);
+							if (proxyAuth != null) {
+								connection.setAttribute(ProxyConnection.
+										PROXY_AUTH_KEY, proxyAuth);
+							}
 						}
-					}
-				});
-			}
-			server.setRealm(realm);
-			server.setEnableReverse(enableReverse);
-			server.setKeepAlive(keepAlive);
-			server.setForwardedType(forwardedType);
-			server.setLogLevel(logLevel);
-			connector.scheduleDelayed(server, 10000, 10000);
+					});
+				}
+				server.setRealm(realm);
+				server.setEnableReverse(enableReverse);
+				server.setKeepAlive(keepAlive);
+				server.setForwardedType(forwardedType);
+				server.setLogLevel(logLevel);
+				loop.scheduleDelayed(server, 10000, 10000);
+				servers.put(loop, server);
+			});
 
-			byte[] cipherBuffer = new byte[Connection.MAX_BUFFER_SIZE];
+			// Shared by all secure binds, and only generated if any
+			SSLContext sslcServer_ = null;
 			for (String bind_ : binds.split("[,;]")) {
 				if (Strings.isBlank(bind_)) {
 					continue;
@@ -231,16 +259,32 @@ public class TunaProxy {
 							Numbers.parseInt(bind.substring(colon + 1)));
 				}
 				if (secure) {
-					SSLContext sslcServer = getSSLContext("CN=localhost", Time.WEEK * 520);
-					connector.add(server.appendFilter(() -> new SSLFilter(connector,
-							connector, server.ssltq, sslcServer,
-							SSLFilter.SERVER_NO_AUTH)), addr);
+					if (sslcServer_ == null) {
+						sslcServer_ = getSSLContext("CN=localhost", Time.WEEK * 520);
+					}
+					SSLContext sslcServer = sslcServer_;
+					connector.add(loop -> {
+						ProxyServer server = servers.get(loop);
+						return server.appendFilter(() -> new SSLFilter(loop,
+								loop, server.ssltq, sslcServer,
+								SSLFilter.SERVER_NO_AUTH));
+					}, addr, sharded);
 				} else if (cipher) {
-					connector.add(server.appendFilter(() -> new CipherFilter(cipherKey, cipherBuffer)), addr);
+					connector.add(loop -> {
+						// CipherFilter's buffer is shared in one loop
+						byte[] cipherBuffer = new byte[Connection.MAX_BUFFER_SIZE];
+						return servers.get(loop).appendFilter(() ->
+								new CipherFilter(cipherKey, cipherBuffer));
+					}, addr, sharded);
 				} else {
-					connector.add(server, addr);
+					connector.add(servers::get, addr, sharded);
 				}
 			}
+			try {
+				connector.registerMBean("TunaProxy");
+			} catch (JMException e) {
+				Log.w(e.getMessage());
+			}
 			Log.i("Tuna Proxy Started on " + binds);
 			connector.doEvents();
 		} catch (IOException | GeneralSecurityException e) {
@@ -0,0 +1,414 @@
+package com.xqbase.tuna.cli;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.xqbase.tuna.Connection;
+import com.xqbase.tuna.ConnectionFilter;
+import com.xqbase.tuna.ConnectionHandler;
+import com.xqbase.tuna.ConnectionSession;
+import com.xqbase.tuna.ConnectorImpl;
+import com.xqbase.tuna.ServerConnection;
+import com.xqbase.tuna.http.HttpPacket;
+import com.xqbase.tuna.http.HttpPacketException;
+import com.xqbase.tuna.mux.EdgeServer;
+import com.xqbase.tuna.mux.MuxContext;
+import com.xqbase.tuna.mux.OriginServer;
+import com.xqbase.tuna.proxy.ProxyServer;
+import com.xqbase.tuna.util.ByteArrayQueue;
+import com.xqbase.tuna.util.Histogram;
+import com.xqbase.util.Numbers;
+import com.xqbase.util.Service;
+
+class EchoConnection implements Connection {
+	private ConnectionHandler handler;
+
+	@Override
+	public void setHandler(ConnectionHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void onRecv(byte[] b, int off, int len) {
+		handler.send(b, off, len);
+	}
+
+	@Override
+	public void onQueue(int size) {
+		// Stop reading until the echoed data is sent
+		handler.setBufferSize(size == 0 ? MAX_BUFFER_SIZE : 0);
+	}
+}
+
+class OriginConnection implements Connection {
+	private ConnectionHandler handler;
+	private byte[] response;
+	private HttpPacket request = new HttpPacket();
+	private ByteArrayQueue queue = new ByteArrayQueue();
+
+	OriginConnection(byte[] response) {
+		this.response = response;
+	}
+
+	@Override
+	public void setHandler(ConnectionHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void onRecv(byte[] b, int off, int len) {
+		queue.add(b, off, len);
+		try {
+			while (queue.length() > 0) {
+				request.read(queue);
+				if (!request.isComplete()) {
+					return;
+				}
+				handler.send(response);
+				request.reset();
+			}
+		} catch (HttpPacketException e) {
+			handler.disconnect();
+		}
+	}
+}
+
+class LoadConnection implements Connection {
+	private LoadGen load;
+	private ConnectionHandler handler;
+	private boolean tunneling;
+	private long sent = 0;
+	private int received = 0;
+	private HttpPacket response = null;
+	private ByteArrayQueue queue = null;
+
+	LoadConnection(LoadGen load) {
+		this.load = load;
+		tunneling = load.workload == LoadGen.CONNECT;
+		if (load.workload == LoadGen.HTTP || tunneling) {
+			response = new HttpPacket();
+			response.setType(tunneling ? HttpPacket.TYPE_RESPONSE_HEAD :
+					HttpPacket.TYPE_RESPONSE);
+			queue = new ByteArrayQueue();
+		}
+	}
+
+	private void send() {
+		sent = System.nanoTime();
+		received = 0;
+		handler.send(load.request);
+	}
+
+	private void complete() {
+		load.record((System.nanoTime() - sent) / 1000);
+		if (!load.stopped) {
+			send();
+		}
+	}
+
+	@Override
+	public void setHandler(ConnectionHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public void onConnect(ConnectionSession session) {
+		load.connected.incrementAndGet();
+		if (tunneling) {
+			handler.send(load.connectRequest);
+		} else {
+			send();
+		}
+	}
+
+	@Override
+	public void onRecv(byte[] b, int off, int len) {
+		if (response == null) {
+			received += len;
+			if (received >= load.request.length) {
+				complete();
+			}
+			return;
+		}
+		queue.add(b, off, len);
+		try {
+			response.read(queue);
+		} catch (HttpPacketException e) {
+			handler.disconnect();
+			onDisconnect();
+			return;
+		}
+		if (!response.isComplete()) {
+			return;
+		}
+		if (!tunneling) {
+			response.reset();
+			complete();
+			return;
+		}
+		if (response.getStatus() != 200) {
+			handler.disconnect();
+			onDisconnect();
+			return;
+		}
+		// Echo through the tunnel
+		response = null;
+		queue = null;
+		tunneling = false;
+		send();
+	}
+
+	@Override
+	public void onDisconnect() {
+		load.connected.decrementAndGet();
+		load.errors.incrementAndGet();
+	}
+}
+
+/**
+ * Opens many client connections with {@link ConnectorImpl} to servers running
+ * in the same process on loopback, drives one of these workloads and
+ * reports throughput and latency:<ul>
+ * <li><b>echo</b>: round trips to an echo server</li>
+ * <li><b>http</b>: HTTP/1.1 keep-alive GETs through a {@link ProxyServer}
+ *		to an origin server</li>
+ * <li><b>connect</b>: round trips through CONNECT tunnels of a {@link ProxyServer}
+ *		to an echo server</li>
+ * <li><b>mux</b>: round trips through virtual connections of an {@link EdgeServer}
+ *		and an {@link OriginServer} to an echo server</li>
+ * </ul>
+ * Each connection sends a request after the response of the previous one.<p>
+ *
+ * Both ends of a connection are in this process, and a proxied connection has a third,
+ * so tens of thousands of connections need a raised limit of open files.
+ */
+public class LoadGen implements AutoCloseable {
+	static final int ECHO = 0;
+	static final int HTTP = 1;
+	static final int CONNECT = 2;
+	static final int MUX = 3;
+
+	private static final List<String> WORKLOADS =
+			Arrays.asList("echo", "http", "connect", "mux");
+	/** Connections to open every 10 milliseconds */
+	private static final int RAMP_BATCH = 256;
+	private static final String LOCALHOST = "127.0.0.1";
+
+	private static Service service = new Service();
+
+	int workload;
+	byte[] request, connectRequest;
+	AtomicLong connected = new AtomicLong(0);
+	AtomicLong errors = new AtomicLong(0);
+	volatile boolean stopped = false;
+
+	private AtomicLong requests = new AtomicLong(0);
+	private Histogram latency = new Histogram();
+	private ConnectorImpl server = null;
+	private Thread serverThread = null;
+
+	LoadGen(int workload, int size, int port) {
+		this.workload = workload;
+		String host = LOCALHOST + ":" + (port + 1);
+		if (workload == HTTP) {
+			request = ("GET http://" + host + "/ HTTP/1.1\r\n" +
+					"Host: " + host + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		} else {
+			request = new byte[size];
+			Arrays.fill(request, (byte) 'x');
+		}
+		if (workload == CONNECT) {
+			connectRequest = ("CONNECT " + host + " HTTP/1.1\r\n" +
+					"Host: " + host + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	void record(long micros) {
+		requests.incrementAndGet();
+		latency.record(micros);
+	}
+
+	private static String option(String[] args, String name) {
+		for (int i = 1; i < args.length - 1; i ++) {
+			if (name.equalsIgnoreCase(args[i])) {
+				return args[i + 1];
+			}
+		}
+		return null;
+	}
+
+	/** Starts servers in their own connector and thread */
+	private void startServers(int workers, int port, int size)
+			throws IOException, InterruptedException {
+		ConnectorImpl connector = new ConnectorImpl(workers);
+		server = connector;
+		int backendPort = port + 1;
+		byte[] body = new byte[size];
+		Arrays.fill(body, (byte) 'x');
+		byte[] response = new ByteArrayQueue().add(("HTTP/1.1 200 OK\r\n" +
+				"Content-Type: text/plain\r\nContent-Length: " + size + "\r\n\r\n").
+				getBytes(StandardCharsets.ISO_8859_1)).add(body).getBytes();
+		ServerConnection backend = workload == HTTP ?
+				() -> new OriginConnection(response) : EchoConnection::new;
+		Map<ConnectorImpl, ServerConnection> frontends = new ConcurrentHashMap<>();
+		CountDownLatch muxLatch = new CountDownLatch(workload == MUX ?
+				Math.max(workers, 1) : 0);
+		if (workload == ECHO) {
+			connector.add(backend, port);
+		} else if (workload == MUX) {
+			// Each loop has an origin for edges, and an edge for clients
+			connector.forEachLoop(loop -> {
+				MuxContext context = new MuxContext(loop, t -> true, 1048576, 0);
+				frontends.put(loop, new OriginServer(backend, context));
+			});
+			connector.add(frontends::get, new InetSocketAddress(LOCALHOST, backendPort));
+			frontends.clear();
+			connector.forEachLoop(loop -> {
+				EdgeServer edge = new EdgeServer(new MuxContext(loop,
+						t -> false, 1048576, 0), null);
+				try {
+					loop.connect(edge.getMuxConnection().appendFilter(new ConnectionFilter() {
+						@Override
+						public void onConnect(ConnectionSession session) {
+							super.onConnect(session);
+							muxLatch.countDown();
+						}
+					}), LOCALHOST, backendPort);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				frontends.put(loop, edge);
+			});
+			connector.add(frontends::get, new InetSocketAddress(LOCALHOST, port));
+		} else {
+			connector.add(backend, backendPort);
+			connector.forEachLoop(loop -> {
+				ProxyServer proxy = new ProxyServer(loop, loop, loop);
+				loop.scheduleDelayed(proxy, 10000, 10000);
+				frontends.put(loop, proxy);
+			});
+			connector.add(frontends::get, new InetSocketAddress(LOCALHOST, port));
+		}
+		serverThread = new Thread(connector::doEvents, "LoadGen-server");
+		serverThread.start();
+		if (!muxLatch.await(10, TimeUnit.SECONDS)) {
+			throw new IOException("Mux Not Connected");
+		}
+	}
+
+	/** Stops and closes servers */
+	@Override
+	public void close() {
+		if (server == null) {
+			return;
+		}
+		if (serverThread != null) {
+			server.interrupt();
+			try {
+				serverThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		server.close();
+	}
+
+	public static void main(String[] args) {
+		if (!service.startup(args)) {
+			return;
+		}
+		int workload = args.length == 0 ? -1 : WORKLOADS.indexOf(args[0].toLowerCase());
+		if (workload < 0) {
+			System.out.println("LoadGen Usage: java -cp tuna-tools.jar " +
+					"com.xqbase.tuna.cli.LoadGen echo|http|connect|mux " +
+					"[-c <connections>] [-d <seconds>] [-s <size>] " +
+					"[-w <workers>] [-p <port>]");
+			service.shutdown();
+			return;
+		}
+		int connections = Numbers.parseInt(option(args, "-c"), 1000, 1, 1000000);
+		int duration = Numbers.parseInt(option(args, "-d"), 10, 1, 86400);
+		int size = Numbers.parseInt(option(args, "-s"), 64, 1, 1048576);
+		int workers = Numbers.parseInt(option(args, "-w"), 2, 0, 1024);
+		int port = Numbers.parseInt(option(args, "-p"), 8380, 1, 65534);
+
+		try (
+			LoadGen load = new LoadGen(workload, size, port);
+			ConnectorImpl connector = new ConnectorImpl(workers);
+		) {
+			load.startServers(workers, port, size);
+			service.register(connector::interrupt);
+			System.out.println(String.format("LoadGen Started (%s, %s connections, " +
+					"%s bytes, %s workers)", WORKLOADS.get(workload),
+					"" + connections, "" + size, "" + workers));
+			// opened, requests and time when measuring begins, and when measuring ends
+			long[] progress = {0, 0, 0, 0, 0};
+			Runnable[] ramp = {null};
+			ramp[0] = () -> {
+				int n = (int) Math.min(RAMP_BATCH, connections - progress[0]);
+				for (int i = 0; i < n; i ++) {
+					try {
+						connector.connect(new LoadConnection(load), LOCALHOST, port);
+					} catch (IOException e) {
+						load.errors.incrementAndGet();
+					}
+				}
+				progress[0] += n;
+				if (progress[0] < connections) {
+					connector.postDelayed(ramp[0], 10);
+					return;
+				}
+				// Measure 1 second after all connections are opened
+				connector.postDelayed(() -> {
+					load.latency.reset();
+					progress[1] = load.requests.get();
+					progress[2] = System.nanoTime();
+					connector.postDelayed(() -> {
+						load.stopped = true;
+						progress[3] = load.requests.get();
+						progress[4] = System.nanoTime();
+						connector.interrupt();
+					}, duration * 1000);
+				}, 1000);
+			};
+			ramp[0].run();
+			long[] lastRequests = {0};
+			connector.scheduleDelayed(() -> {
+				long requests = load.requests.get();
+				System.out.println(String.format("connected=%s, requests/s=%s, errors=%s",
+						"" + load.connected.get(), "" + (requests - lastRequests[0]),
+						"" + load.errors.get()));
+				lastRequests[0] = requests;
+			}, 1000, 1000);
+			connector.doEvents();
+
+			if (progress[4] == 0) {
+				System.out.println("LoadGen Interrupted");
+			} else {
+				double seconds = (progress[4] - progress[2]) / 1e9;
+				long requests = progress[3] - progress[1];
+				long bytes = requests * (workload == HTTP ? size : load.request.length);
+				System.out.println(String.format("Requests: %s in %.1f s, %.0f req/s, " +
+						"%.2f MB/s, errors: %s", "" + requests, Double.valueOf(seconds),
+						Double.valueOf(requests / seconds),
+						Double.valueOf(bytes / seconds / 1048576), "" + load.errors.get()));
+				System.out.println("Latency (us): " + load.latency);
+				System.out.println("Client: " + connector.getStats());
+				System.out.println("Server: " + load.server.getStats());
+			}
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		service.shutdown();
+	}
+}
\ No newline at end of file